@@ -0,0 +1,25 @@
+/** @file AlgorismeFluxMaxim.java
+    @brief Enumeració AlgorismeFluxMaxim
+*/
+
+/** @enum AlgorismeFluxMaxim
+    @brief Algorismes disponibles per calcular el flux màxim d'una xarxa
+    @author Marcel·lí Corominas
+*/
+
+public enum AlgorismeFluxMaxim {
+    EDMONDS_KARP,   ///< Camins d'augment més curts sobre MotorFluxMaxim
+    DINIC,          ///< Fluxos bloquejants per nivells sobre MotorFluxMaxim
+    PUSH_RELABEL;   ///< Push-relabel amb selecció de l'etiqueta més alta sobre MotorFluxMaxim
+
+    /** @brief Retorna l'algorisme amb nom nom
+	@pre  ---
+	@post Retorna l'algorisme el nom del qual (en minúscules i amb guions en lloc de guions baixos) és nom, null si no n'hi ha cap
+    */
+    public static AlgorismeFluxMaxim perNom(String nom){
+        for (AlgorismeFluxMaxim a : values()) {
+            if (a.name().toLowerCase().replace('_', '-').equals(nom)) return a;
+        }
+        return null;
+    }
+}
@@ -1,10 +1,30 @@
+import java.io.IOException;
+
 public abstract class BeWater {
-    //Descripció general: Programa principal de simulació de xarxes de distribució d'aigua
+    //Descripció general: Programa principal de simulació de xarxes de distribució d'aigua. Amb un sol argument
+    //                    executa el fitxer d'operacions sobre una xarxa buida; amb dos, el primer és una xarxa
+    //                    desada en format binari (operació desar) de la qual parteix la simulació. Els resultats
+    //                    s'afegeixen a sortida.txt, o al fitxer de la propietat bewater.sortida si s'ha definit.
 
     public static void main(String[] args) {
-        SimuladorModeText simulador = new SimuladorModeText();
+        SimuladorModeText simulador;
+        String fitxer;
+        if (args.length >= 2) {
+            try {
+                simulador = new SimuladorModeText(Xarxa.obrir(args[0]));
+            }
+            catch (IOException e) {
+                System.out.println("\nError a les dades --> " + e.getMessage());
+                return;
+            }
+            fitxer = args[1];
+        }
+        else {
+            simulador = new SimuladorModeText();
+            fitxer = args[0];
+        }
         System.out.println("Be water, my friend");
-        simulador.simular(args[0]);
+        simulador.simular(fitxer, System.getProperty("bewater.sortida", "sortida.txt"));
     }
 
 }
@@ -59,6 +59,15 @@ public class Canonada {
         return this.capacitatTemporal;
     }
 
+    /** @brief Canvia la capacitat de la canonada
+	@pre capacitat >= 0
+	@post La capacitat i la capacitat temporal de la canonada valen capacitat
+    */
+    public void establirCapacitat(float capacitat) {
+        this.capacitat = capacitat;
+        this.capacitatTemporal = capacitat;
+    }
+
     /** @brief Redueix la capacitat temporal en quantitat
 	@pre quantitat>0
 	@post Redueix la capacitat temporal en quantitat
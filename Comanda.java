@@ -0,0 +1,22 @@
+/** @file Comanda.java
+    @brief Interfície Comanda
+*/
+
+/** @class Comanda
+    @brief Tractament d'una operació del fitxer d'entrada del simulador
+    @author Marcel·lí Corominas
+*/
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+public interface Comanda {
+    //Descripció general: Cada operació de SimuladorModeText (terminal, connectar, tancar, ...) té una Comanda
+    //                    registrada amb el seu nom, que llegeix els seus paràmetres del lector i escriu el resultat
+
+    /** @brief Executa l'operació
+	@pre  S'acaba de llegir la línia amb el nom de l'operació
+	@post S'han llegit de lector les línies de l'operació (i cap més) i s'ha escrit el resultat a sortida
+    */
+    void executar(LectorOrdres lector, PrintWriter sortida) throws IOException;
+}
@@ -0,0 +1,101 @@
+/** @file ConjuntsDisjunts.java
+    @brief Classe ConjuntsDisjunts
+*/
+
+/** @class ConjuntsDisjunts
+    @brief Partició d'enters 0..n-1 en conjunts disjunts (union-find)
+    @author Roger Costa
+*/
+
+import java.util.Arrays;
+
+public class ConjuntsDisjunts {
+    //Descripció general: Union-find amb unió per mida i compressió de camins a mitges. Els elements s'afegeixen un a
+    //                    un i es numeren consecutivament des de 0.
+
+    private int[] pare;     ///< Pare de cada element (ell mateix si és representant)
+    private int[] mida;     ///< Nombre d'elements del conjunt de cada representant
+    private int n;          ///< Nombre d'elements
+    private int conjunts;   ///< Nombre de conjunts
+
+    /** @brief Crea una partició buida
+	@pre  ---
+	@post S'ha creat una partició sense cap element
+    */
+    public ConjuntsDisjunts(){
+        pare = new int[16];
+        mida = new int[16];
+        n = 0;
+        conjunts = 0;
+    }
+
+    /** @brief Afegeix un element en un conjunt nou
+	@pre  ---
+	@post Retorna el número del nou element, que forma un conjunt ell sol
+    */
+    public int afegir(){
+        if (n == pare.length) {
+            pare = Arrays.copyOf(pare, n*2);
+            mida = Arrays.copyOf(mida, n*2);
+        }
+        pare[n] = n;
+        mida[n] = 1;
+        conjunts++;
+        return n++;
+    }
+
+    /** @brief Retorna el representant del conjunt de l'element a
+	@pre  0 <= a < nombreElements()
+	@post Retorna el representant del conjunt que conté a
+    */
+    public int trobar(int a){
+        while (pare[a] != a) {
+            pare[a] = pare[pare[a]];
+            a = pare[a];
+        }
+        return a;
+    }
+
+    /** @brief Uneix els conjunts dels elements a i b
+	@pre  0 <= a, b < nombreElements()
+	@post a i b són al mateix conjunt; retorna true si abans no ho eren
+    */
+    public boolean unir(int a, int b){
+        int ra = trobar(a);
+        int rb = trobar(b);
+        if (ra == rb) return false;
+        if (mida[ra] < mida[rb]) {
+            int t = ra;
+            ra = rb;
+            rb = t;
+        }
+        pare[rb] = ra;
+        mida[ra] += mida[rb];
+        conjunts--;
+        return true;
+    }
+
+    /** @brief Retorna la mida del conjunt de l'element a
+	@pre  0 <= a < nombreElements()
+	@post Retorna el nombre d'elements del conjunt que conté a
+    */
+    public int mida(int a){
+        return mida[trobar(a)];
+    }
+
+    /** @brief Retorna el nombre d'elements
+	@pre  ---
+	@post Retorna el nombre d'elements afegits
+    */
+    public int nombreElements(){
+        return n;
+    }
+
+    /** @brief Retorna el nombre de conjunts
+	@pre  ---
+	@post Retorna el nombre de conjunts disjunts
+    */
+    public int nombreConjunts(){
+        return conjunts;
+    }
+}
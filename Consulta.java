@@ -0,0 +1,26 @@
+/** @file Consulta.java
+    @brief Interfície Consulta
+*/
+
+/** @class Consulta
+    @brief Tractament d'una operació del simulador que només consulta la xarxa
+    @author Marcel·lí Corominas
+*/
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.function.Consumer;
+
+public interface Consulta {
+    //Descripció general: Operació de SimuladorModeText que no modifica la xarxa (cicles, exces cabal, proximitat, ...).
+    //                    Es fa en dues parts: la lectura dels paràmetres, que es fa en ordre al fil principal, i el
+    //                    càlcul, que es pot fer en un altre fil en paral·lel amb les altres consultes de la mateixa
+    //                    època (les operacions entre dues modificacions de la xarxa).
+
+    /** @brief Llegeix els paràmetres de la consulta
+	@pre  S'acaba de llegir la línia amb el nom de l'operació
+	@post S'han llegit de lector les línies de l'operació (i cap més), i retorna el càlcul, que escriu el resultat a
+	      la sortida que rep sense modificar la xarxa
+    */
+    Consumer<PrintWriter> llegir(LectorOrdres lector) throws IOException;
+}
@@ -8,9 +8,16 @@
 */
 
 public class Coordenades {
-    //Descripció general: Coordenades geogràfiques (latitud, longitud)
+    //Descripció general: Coordenades geogràfiques (latitud, longitud). El text es llegeix d'una sola passada sense
+    //                    crear cadenes intermèdies; si no té la forma habitual (graus:minuts:segons i direcció) es
+    //                    llegeix amb el mètode general, que dona els mateixos valors i errors que sempre. La latitud
+    //                    en radians i el seu cosinus es calculen un sol cop, en crear les coordenades.
     float latitud; ///< Representacio de la latitud
     float longitud; ///< Representacio de la longitud
+    private double latitudRad; ///< Latitud en radians
+    private double cosLatitud; ///< Cosinus de la latitud
+
+    private static final float[] POTENCIES_10 = {1f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f}; ///< Potències de 10 exactes en float
 
     /** @brief Passa de coordenades en hores,minuts, segons al equivalent amb longitud i latitud
 	@pre  0 <= grausLatitud <= 60, 0 <= minutsLatitud <= 60, 
@@ -21,6 +28,130 @@ public class Coordenades {
     */
     //Excepcions: IllegalArgumentException si es viola la precondició
     public Coordenades(String coor){
+        if (!llegir(coor)) llegirGeneral(coor);
+        latitudRad = Math.toRadians(latitud);
+        cosLatitud = Math.cos(latitudRad);
+    }
+
+    /** @brief Crea les coordenades amb latitud i longitud decimals
+	@pre  ---
+	@post S'han creat les coordenades (latitud, longitud)
+    */
+    Coordenades(float latitud, float longitud){
+        this.latitud = latitud;
+        this.longitud = longitud;
+        latitudRad = Math.toRadians(latitud);
+        cosLatitud = Math.cos(latitudRad);
+    }
+
+    /** @brief Llegeix les coordenades coor d'una sola passada
+	@pre  ---
+	@post Si coor té la forma g:m:sD,g:m:sD (graus i minuts enters de com a molt 9 xifres, segons amb decimals
+	      opcionals i D una lletra, N, S, E o W a la latitud) s'han establert la latitud i la longitud i retorna true;
+	      si no, retorna false sense modificar res
+    */
+    private boolean llegir(String coor){
+        if (coor == null) return false;
+        int n = coor.length();
+
+        long v = enter(coor, 0);
+        if (v < 0) return false;
+        int grausLatitud = (int) (v >>> 32);
+        int i = (int) v;
+        if (i >= n || coor.charAt(i) != ':') return false;
+        v = enter(coor, i + 1);
+        if (v < 0) return false;
+        int minutsLatitud = (int) (v >>> 32);
+        i = (int) v;
+        if (i >= n || coor.charAt(i) != ':') return false;
+        int fi = fiSegons(coor, i + 1);
+        if (fi < 0 || fi + 1 >= n || coor.charAt(fi + 1) != ',') return false;
+        char direccioLatitud = coor.charAt(fi);
+        if (direccioLatitud != 'N' && direccioLatitud != 'S' && direccioLatitud != 'E' && direccioLatitud != 'W') return false;
+        float segonsLatitud = segons(coor, i + 1, fi);
+
+        v = enter(coor, fi + 2);
+        if (v < 0) return false;
+        int grausLongitud = (int) (v >>> 32);
+        i = (int) v;
+        if (i >= n || coor.charAt(i) != ':') return false;
+        v = enter(coor, i + 1);
+        if (v < 0) return false;
+        int minutsLongitud = (int) (v >>> 32);
+        i = (int) v;
+        if (i >= n || coor.charAt(i) != ':') return false;
+        fi = fiSegons(coor, i + 1);
+        if (fi < 0 || fi + 1 != n || !Character.isLetter(coor.charAt(fi))) return false;
+        float segonsLongitud = segons(coor, i + 1, fi);
+
+        this.latitud=grausLatitud + (minutsLatitud / 60) + (segonsLatitud / 3600);
+        this.longitud=grausLongitud + (minutsLongitud / 60) + (segonsLongitud / 3600);
+        return true;
+    }
+
+    /** @brief Llegeix un enter sense signe de coor a partir de la posició i
+	@pre  0 <= i
+	@post Si a partir de i hi ha entre 1 i 9 xifres, retorna el seu valor als 32 bits alts i la posició següent a
+	      l'última xifra als 32 baixos; si no, retorna -1
+    */
+    private static long enter(String coor, int i){
+        int valor = 0;
+        int j = i;
+        while (j < coor.length() && coor.charAt(j) >= '0' && coor.charAt(j) <= '9') {
+            if (j - i == 9) return -1;
+            valor = valor * 10 + (coor.charAt(j) - '0');
+            j++;
+        }
+        if (j == i) return -1;
+        return ((long) valor << 32) | j;
+    }
+
+    /** @brief Final dels segons que comencen a la posició i de coor
+	@pre  0 <= i
+	@post Retorna la posició següent als segons (xifres amb com a molt un punt decimal i alguna xifra) que comencen a
+	      i, -1 si no n'hi ha
+    */
+    private static int fiSegons(String coor, int i){
+        int j = i;
+        boolean punt = false, xifra = false;
+        while (j < coor.length()) {
+            char ch = coor.charAt(j);
+            if (ch >= '0' && ch <= '9') xifra = true;
+            else if (ch == '.' && !punt) punt = true;
+            else break;
+            j++;
+        }
+        return xifra ? j : -1;
+    }
+
+    /** @brief Valor dels segons de les posicions [i, fi) de coor
+	@pre  [i, fi) conté xifres amb com a molt un punt decimal
+	@post Retorna el mateix valor que Float.parseFloat(coor.substring(i, fi))
+    */
+    private static float segons(String coor, int i, int fi){
+        long mantissa = 0;
+        int decimals = 0;
+        boolean punt = false;
+        for (int j = i; j < fi; j++) {
+            char ch = coor.charAt(j);
+            if (ch == '.') punt = true;
+            else {
+                mantissa = mantissa * 10 + (ch - '0');
+                if (punt) decimals++;
+                if (mantissa >= (1 << 24)) return Float.parseFloat(coor.substring(i, fi));
+            }
+        }
+        //La mantissa i la potència de 10 són exactes en float, i la divisió és l'arrodoniment correcte del quocient
+        if (decimals >= POTENCIES_10.length) return Float.parseFloat(coor.substring(i, fi));
+        return (float) mantissa / POTENCIES_10[decimals];
+    }
+
+    /** @brief Llegeix les coordenades coor separant-ne les parts
+	@pre  ---
+	@post S'han establert la latitud i la longitud de coor; si coor no és vàlid s'ha mostrat l'error
+    */
+    //Excepcions: IllegalArgumentException si es viola la precondició de la constructora
+    private void llegirGeneral(String coor){
         try {
             String[] parts = coor.split(",");
             String[] latitudParts = parts[0].split(":");
@@ -58,19 +189,31 @@ public class Coordenades {
     */
     public double distancia(Coordenades c){
 
-        //De decimal a radians
-        double thislatitudRad = Math.toRadians(this.latitud);
-        double clatitudRad = Math.toRadians(c.latitud);
-
         double incremLatitud = Math.toRadians(c.latitud - this.latitud);
         double incremLongitud = Math.toRadians(c.longitud - this.longitud);
 
         // Formula d'haversine
         double a = Math.sin(incremLatitud / 2) * Math.sin(incremLatitud / 2) +
-                   Math.cos(thislatitudRad) * Math.cos(clatitudRad) *
+                   this.cosLatitud * c.cosLatitud *
                    Math.sin(incremLongitud / 2) * Math.sin(incremLongitud / 2);
         double b = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
 
         return 6371.1 * b;
     }
+
+    /** @brief Retorna la latitud en radians
+	@pre  ---
+	@post Retorna la latitud en radians
+    */
+    public double latitudRadians(){
+        return latitudRad;
+    }
+
+    /** @brief Retorna el cosinus de la latitud
+	@pre  ---
+	@post Retorna el cosinus de la latitud
+    */
+    public double cosLatitud(){
+        return cosLatitud;
+    }
 }
@@ -0,0 +1,95 @@
+/** @file DiariCanvis.java
+    @brief Classe DiariCanvis
+*/
+
+/** @class DiariCanvis
+    @brief Registre de les modificacions d'una xarxa, per poder-les desfer
+    @author Roger Costa
+*/
+
+import java.util.Arrays;
+
+public class DiariCanvis {
+    //Descripció general: Pila de modificacions d'una Xarxa en vectors paral·lels: el tipus de la modificació, l'element
+    //                    modificat (node o canonada) i el valor que tenia abans. Desfer les n últimes modificacions
+    //                    costa O(n): es recorren des del final i es trunca la pila.
+
+    static final byte AIXETA = 0;       ///< Canvi d'estat d'una aixeta; el valor anterior és 1 si estava oberta, 0 si no
+    static final byte DEMANDA = 1;      ///< Canvi de la demanda actual d'un terminal
+    static final byte CABAL = 2;        ///< Canvi del cabal d'un origen
+    static final byte CAPACITAT = 3;    ///< Canvi de la capacitat d'una canonada
+    static final byte CANONADA = 4;     ///< Canonada nova; no té valor anterior
+
+    private byte[] tipus;               ///< Tipus de cada modificació
+    private Object[] element;           ///< Node o canonada de cada modificació
+    private float[] anterior;           ///< Valor anterior de cada modificació
+    private int mida;                   ///< Nombre de modificacions
+
+    /** @brief Crea un diari buit
+	@pre  ---
+	@post S'ha creat un diari sense cap modificació
+    */
+    public DiariCanvis(){
+        tipus = new byte[16];
+        element = new Object[16];
+        anterior = new float[16];
+        mida = 0;
+    }
+
+    /** @brief Registra una modificació
+	@pre  t és un dels tipus de modificació
+	@post S'ha afegit la modificació t de e, que tenia el valor valorAnterior, al final del diari
+    */
+    void afegir(byte t, Object e, float valorAnterior){
+        if (mida == tipus.length) {
+            tipus = Arrays.copyOf(tipus, mida * 2);
+            element = Arrays.copyOf(element, mida * 2);
+            anterior = Arrays.copyOf(anterior, mida * 2);
+        }
+        tipus[mida] = t;
+        element[mida] = e;
+        anterior[mida] = valorAnterior;
+        mida++;
+    }
+
+    /** @brief Retorna el nombre de modificacions
+	@pre  ---
+	@post Retorna el nombre de modificacions registrades
+    */
+    public int mida(){
+        return mida;
+    }
+
+    /** @brief Retorna el tipus de la modificació i
+	@pre  0 <= i < mida()
+	@post Retorna el tipus de la modificació i
+    */
+    byte tipus(int i){
+        return tipus[i];
+    }
+
+    /** @brief Retorna l'element de la modificació i
+	@pre  0 <= i < mida()
+	@post Retorna el node o la canonada modificat per la modificació i
+    */
+    Object element(int i){
+        return element[i];
+    }
+
+    /** @brief Retorna el valor anterior de la modificació i
+	@pre  0 <= i < mida()
+	@post Retorna el valor que tenia l'element abans de la modificació i
+    */
+    float anterior(int i){
+        return anterior[i];
+    }
+
+    /** @brief Descarta les modificacions posteriors a punt
+	@pre  0 <= punt <= mida()
+	@post El diari només conté les punt primeres modificacions
+    */
+    void truncar(int punt){
+        Arrays.fill(element, punt, mida, null);
+        mida = punt;
+    }
+}
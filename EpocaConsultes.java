@@ -0,0 +1,187 @@
+/** @file EpocaConsultes.java
+    @brief Classe EpocaConsultes
+*/
+
+/** @class EpocaConsultes
+    @brief Consultes pendents entre dues modificacions de la xarxa, calculades en paral·lel
+    @author Marcel·lí Corominas
+*/
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+public class EpocaConsultes implements AutoCloseable {
+    //Descripció general: Les consultes que SimuladorModeText troba entre dues modificacions de la xarxa es llegeixen
+    //                    en ordre i es calculen en un grup de fils. Cada consulta escriu en una sortida pròpia, i
+    //                    el que escriu per consola (missatges d'error) també es desvia a un buffer propi. Abans de
+    //                    la modificació següent (buidar) s'esperen totes i s'escriuen les sortides en l'ordre del
+    //                    fitxer, de manera que el resultat és el mateix que si s'haguessin fet una darrere l'altra.
+    //                    Si una consulta falla, l'error es llança en buidar, després d'escriure la sortida de les
+    //                    anteriors, i les posteriors es descarten.
+
+    private final ExecutorService fils;                     ///< Fils que calculen les consultes
+    private final List<Future<Resposta>> pendents;          ///< Consultes de l'època, en l'ordre del fitxer
+    private final PrintStream consola;                      ///< System.out en crear l'època
+    private final Desviador desviador;                      ///< Destí del que s'escriu per consola a cada fil
+
+    /** @brief Crea una època buida que calcula les consultes amb nFils fils
+	@pre  nFils > 0
+	@post S'ha creat l'època; fins que es tanqui, System.out desvia el que escriu cada consulta al seu buffer
+    */
+    public EpocaConsultes(int nFils){
+        pendents = new ArrayList<>();
+        consola = System.out;
+        desviador = new Desviador(consola);
+        String codificacio = System.getProperty("sun.stdout.encoding");
+        Charset charset = codificacio != null ? Charset.forName(codificacio) : Charset.defaultCharset();
+        System.setOut(new PrintStream(desviador, true, charset));
+        fils = Executors.newFixedThreadPool(nFils, r -> {
+            Thread t = new Thread(r, "consulta");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** @brief Llegeix la consulta c i la comença a calcular
+	@pre  S'acaba de llegir de lector el nom de l'operació de c
+	@post S'han llegit els paràmetres de c i el càlcul s'ha afegit a l'època
+    */
+    //Excepcions: l'error de la lectura, després de buidar l'època, si no s'han pogut llegir els paràmetres
+    public void afegir(Consulta c, LectorOrdres lector, PrintWriter sortida) throws IOException {
+        Resposta r = new Resposta();
+        Consumer<PrintWriter> calcul;
+        desviador.desviar(r.consola);
+        try {
+            calcul = c.llegir(lector);
+        }
+        catch (Throwable e) {
+            r.error = e;
+            pendents.add(CompletableFuture.completedFuture(r));
+            buidar(sortida);
+            return;
+        }
+        finally {
+            desviador.desviar(null);
+        }
+        pendents.add(fils.submit(() -> {
+            desviador.desviar(r.consola);
+            try {
+                calcul.accept(r.escriptor);
+            }
+            catch (Throwable e) {
+                r.error = e;
+            }
+            finally {
+                r.escriptor.flush();
+                desviador.desviar(null);
+            }
+            return r;
+        }));
+    }
+
+    /** @brief Acaba l'època
+	@pre  ---
+	@post S'han escrit, en ordre, la sortida de totes les consultes pendents a sortida i el que han escrit per consola
+	      a la consola; no queda cap consulta pendent
+    */
+    //Excepcions: l'error de la primera consulta que ha fallat, si n'hi ha cap
+    public void buidar(PrintWriter sortida) throws IOException {
+        try {
+            for (Future<Resposta> f : pendents) {
+                Resposta r;
+                try {
+                    r = f.get();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("S'ha interromput l'espera d'una consulta");
+                }
+                catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                consola.write(r.consola.toByteArray());
+                consola.flush();
+                sortida.print(r.text.toString());
+                if (r.error instanceof IOException) throw (IOException) r.error;
+                if (r.error instanceof RuntimeException) throw (RuntimeException) r.error;
+                if (r.error instanceof Error) throw (Error) r.error;
+                if (r.error != null) throw new IllegalStateException(r.error);
+            }
+        }
+        finally {
+            pendents.clear();
+        }
+    }
+
+    /** @brief Tanca l'època
+	@pre  No queda cap consulta pendent
+	@post S'han aturat els fils i System.out torna a ser el d'abans de crear l'època
+    */
+    @Override
+    public void close(){
+        fils.shutdownNow();
+        System.setOut(consola);
+    }
+
+    /** @class Resposta
+        @brief Sortida d'una consulta
+    */
+    private static class Resposta {
+        final StringWriter text = new StringWriter();                       ///< Resultat de la consulta
+        final PrintWriter escriptor = new PrintWriter(text);                ///< Escriptor de text
+        final ByteArrayOutputStream consola = new ByteArrayOutputStream();  ///< El que la consulta escriu per consola
+        Throwable error;                                                    ///< Error de la consulta, null si no n'hi ha
+    }
+
+    /** @class Desviador
+        @brief Flux de sortida que envia el que escriu cada fil al seu buffer, o a la consola si no en té
+    */
+    private static class Desviador extends OutputStream {
+        private final OutputStream consola;                                 ///< Consola
+        private final ThreadLocal<OutputStream> desti = new ThreadLocal<>(); ///< Buffer de cada fil
+
+        /** @brief Crea un desviador cap a consola
+	    @pre  ---
+	    @post Cap fil no té buffer
+        */
+        Desviador(OutputStream consola){
+            this.consola = consola;
+        }
+
+        /** @brief Estableix el buffer del fil actual
+	    @pre  ---
+	    @post El que escrigui el fil actual va a buffer (a la consola si buffer és null)
+        */
+        void desviar(OutputStream buffer){
+            if (buffer == null) desti.remove();
+            else desti.set(buffer);
+        }
+
+        /** @brief Destí del fil actual
+	    @pre  ---
+	    @post Retorna el buffer del fil actual, o la consola si no en té
+        */
+        private OutputStream desti(){
+            OutputStream d = desti.get();
+            return d != null ? d : consola;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            desti().write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            desti().write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            desti().flush();
+        }
+    }
+}
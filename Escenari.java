@@ -0,0 +1,136 @@
+/** @file Escenari.java
+    @brief Classe Escenari
+*/
+
+/** @class Escenari
+    @brief Conjunt de canvis d'aixetes, demandes i cabals que es volen provar sobre una xarxa
+    @author Marcel·lí Corominas
+*/
+
+import java.util.*;
+
+public class Escenari {
+    //Descripció general: Hipòtesi que GestorXarxes.escenaris avalua sense modificar la xarxa: tancar o obrir aixetes,
+    //                    canviar la demanda actual de terminals o el cabal d'origens. Els canvis s'apliquen en l'ordre
+    //                    en què s'han afegit.
+
+    private final String nom;           ///< Nom de l'escenari
+    private final List<Canvi> canvis;   ///< Canvis de l'escenari, en ordre
+
+    /** @brief Crea un escenari sense canvis
+	@pre  ---
+	@post S'ha creat l'escenari nom, sense cap canvi
+    */
+    public Escenari(String nom){
+        this.nom = nom;
+        this.canvis = new ArrayList<>();
+    }
+
+    /** @brief Crea l'escenari de tancar l'aixeta d'un node
+	@pre  node no és null
+	@post Retorna un escenari, amb el nom "tancar" i l'identificador del node, que només tanca l'aixeta del node
+    */
+    public static Escenari tancament(Node node){
+        return new Escenari("tancar " + node.id()).tancar(node);
+    }
+
+    /** @brief Retorna el nom de l'escenari
+	@pre  ---
+	@post Retorna el nom de l'escenari
+    */
+    public String nom(){
+        return nom;
+    }
+
+    /** @brief Afegeix el tancament de l'aixeta d'un node
+	@pre  ---
+	@post L'escenari tanca l'aixeta del node; retorna l'escenari
+    */
+    public Escenari tancar(Node node){
+        canvis.add(new Canvi(DiariCanvis.AIXETA, node, 0));
+        return this;
+    }
+
+    /** @brief Afegeix l'obertura de l'aixeta d'un node
+	@pre  ---
+	@post L'escenari obre l'aixeta del node; retorna l'escenari
+    */
+    public Escenari obrir(Node node){
+        canvis.add(new Canvi(DiariCanvis.AIXETA, node, 1));
+        return this;
+    }
+
+    /** @brief Afegeix un canvi de demanda actual
+	@pre  ---
+	@post L'escenari estableix la demanda actual de nodeTerminal a demanda; retorna l'escenari
+    */
+    public Escenari demanda(Terminal nodeTerminal, float demanda){
+        canvis.add(new Canvi(DiariCanvis.DEMANDA, nodeTerminal, demanda));
+        return this;
+    }
+
+    /** @brief Afegeix un canvi de cabal d'un origen
+	@pre  ---
+	@post L'escenari estableix el cabal de nodeOrigen a cabal; retorna l'escenari
+    */
+    public Escenari cabal(Origen nodeOrigen, float cabal){
+        canvis.add(new Canvi(DiariCanvis.CABAL, nodeOrigen, cabal));
+        return this;
+    }
+
+    /** @brief Retorna el nombre de canvis
+	@pre  ---
+	@post Retorna el nombre de canvis de l'escenari
+    */
+    public int nombreCanvis(){
+        return canvis.size();
+    }
+
+    /** @brief Tipus del canvi i
+	@pre  0 <= i < nombreCanvis()
+	@post Retorna el tipus (de DiariCanvis) del canvi i: AIXETA, DEMANDA o CABAL
+    */
+    byte tipus(int i){
+        return canvis.get(i).tipus;
+    }
+
+    /** @brief Node del canvi i
+	@pre  0 <= i < nombreCanvis()
+	@post Retorna el node que modifica el canvi i
+    */
+    Node node(int i){
+        return canvis.get(i).node;
+    }
+
+    /** @brief Valor del canvi i
+	@pre  0 <= i < nombreCanvis()
+	@post Retorna el valor nou del canvi i (1 si obre l'aixeta i 0 si la tanca, en els canvis d'aixeta)
+    */
+    float valor(int i){
+        return canvis.get(i).valor;
+    }
+
+    @Override
+    public String toString(){
+        return nom;
+    }
+
+    /** @class Canvi
+        @brief Un canvi d'un escenari
+    */
+    private static class Canvi {
+        final byte tipus;   ///< Tipus del canvi
+        final Node node;    ///< Node que canvia
+        final float valor;  ///< Valor nou
+
+        /** @brief Crea un canvi
+	    @pre  ---
+	    @post S'ha creat el canvi tipus de node a valor
+        */
+        Canvi(byte tipus, Node node, float valor){
+            this.tipus = tipus;
+            this.node = node;
+            this.valor = valor;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/** @file EscriptorAsincron.java
+    @brief Classe EscriptorAsincron
+*/
+
+/** @class EscriptorAsincron
+    @brief Escriptor de text que afegeix a un fitxer des d'un fil propi, amb doble buffer
+    @author Marcel·lí Corominas
+*/
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class EscriptorAsincron extends Writer {
+    //Descripció general: Sortida dels resultats del simulador. El text es codifica en un buffer directe; quan s'omple,
+    //                    es passa a un fil que l'escriu al fitxer amb un FileChannel mentre el simulador continua
+    //                    omplint l'altre buffer. Els buffers s'escriuen en l'ordre en què s'omplen. flush i close
+    //                    esperen que s'hagi escrit tot el que s'ha rebut.
+
+    private static final int MIDA_BUFFER = 1 << 18;                 ///< Mida de cada buffer
+    private static final int MIDA_CARACTERS = 1 << 13;              ///< Caràcters que es codifiquen de cop
+    private static final ByteBuffer FI = ByteBuffer.allocate(0);    ///< Marca de final per al fil d'escriptura
+
+    private final FileChannel canal;                                ///< Fitxer de sortida
+    private final CharsetEncoder codificador;                       ///< Codificació del text
+    private final BlockingQueue<ByteBuffer> plens;                  ///< Buffers pendents d'escriure
+    private final BlockingQueue<ByteBuffer> lliures;                ///< Buffers ja escrits
+    private final Thread fil;                                       ///< Fil que escriu els buffers al fitxer
+    private final CharBuffer caracters;                             ///< Caràcters pendents de codificar
+    private final ByteBuffer codificats;                            ///< Caràcters codificats, pendents de copiar a actual
+    private ByteBuffer actual;                                      ///< Buffer que s'està omplint
+    private volatile IOException error;                             ///< Primer error d'escriptura, null si no n'hi ha
+    private boolean tancat;                                         ///< Diu si ja s'ha tancat
+
+    /** @brief Crea un escriptor que afegeix al final del fitxer fitxer
+	@pre  ---
+	@post S'ha creat l'escriptor (i el fitxer, si no existia) amb la codificació per defecte
+    */
+    //Excepcions: IOException si no es pot obrir el fitxer
+    public EscriptorAsincron(String fitxer) throws IOException {
+        canal = FileChannel.open(Paths.get(fitxer), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        codificador = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        plens = new ArrayBlockingQueue<>(2);
+        lliures = new ArrayBlockingQueue<>(2);
+        lliures.add(ByteBuffer.allocateDirect(MIDA_BUFFER));
+        actual = ByteBuffer.allocateDirect(MIDA_BUFFER);
+        caracters = CharBuffer.allocate(MIDA_CARACTERS);
+        codificats = ByteBuffer.allocate((int) Math.ceil(MIDA_CARACTERS * (double) codificador.maxBytesPerChar()));
+        tancat = false;
+        fil = new Thread(this::escriure, "sortida");
+        fil.setDaemon(true);
+        fil.start();
+    }
+
+    /** @brief Escriu len caràcters de cbuf a partir de off
+	@pre  L'escriptor no està tancat
+	@post S'han afegit els caràcters a l'escriptor
+    */
+    //Excepcions: IOException si ha fallat una escriptura anterior
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        comprovar();
+        while (len > 0) {
+            int n = Math.min(len, caracters.remaining());
+            caracters.put(cbuf, off, n);
+            off += n;
+            len -= n;
+            if (!caracters.hasRemaining()) codificar();
+        }
+    }
+
+    /** @brief Escriu len caràcters de str a partir de off
+	@pre  L'escriptor no està tancat
+	@post S'han afegit els caràcters a l'escriptor
+    */
+    //Excepcions: IOException si ha fallat una escriptura anterior
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        comprovar();
+        while (len > 0) {
+            int n = Math.min(len, caracters.remaining());
+            int p = caracters.position();
+            str.getChars(off, off + n, caracters.array(), p);
+            caracters.position(p + n);
+            off += n;
+            len -= n;
+            if (!caracters.hasRemaining()) codificar();
+        }
+    }
+
+    /** @brief Escriu al fitxer tot el que s'ha rebut
+	@pre  L'escriptor no està tancat
+	@post El fitxer conté tot el text rebut fins ara
+    */
+    //Excepcions: IOException si no s'ha pogut escriure
+    @Override
+    public void flush() throws IOException {
+        comprovar();
+        codificar();
+        if (actual.position() > 0) enviar();
+        esperar();
+        comprovar();
+    }
+
+    /** @brief Tanca l'escriptor
+	@pre  ---
+	@post S'ha escrit tot el text rebut, s'ha aturat el fil d'escriptura i s'ha tancat el fitxer
+    */
+    //Excepcions: IOException si no s'ha pogut escriure
+    @Override
+    public void close() throws IOException {
+        if (tancat) return;
+        tancat = true;
+        try {
+            if (error == null) {
+                codificar();
+                if (actual.position() > 0) enviar();
+            }
+            posar(plens, FI);
+            fil.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("S'ha interromput l'escriptura de la sortida");
+        }
+        finally {
+            canal.close();
+        }
+        if (error != null) throw error;
+    }
+
+    /** @brief Codifica els caràcters pendents al buffer actual
+	@pre  ---
+	@post S'han codificat tots els caràcters pendents menys, potser, l'inici d'una parella subrogada final, que
+	      continua pendent; els buffers plens s'han passat al fil d'escriptura
+    */
+    private void codificar() throws IOException {
+        //Es codifica en un buffer del heap, on el codificador és més ràpid, i es copia de cop al buffer directe
+        caracters.flip();
+        codificats.clear();
+        CoderResult r = codificador.encode(caracters, codificats, false);
+        if (r.isError()) {
+            try {
+                r.throwException();
+            }
+            catch (CharacterCodingException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        caracters.compact();
+        codificats.flip();
+        while (codificats.hasRemaining()) {
+            if (!actual.hasRemaining()) enviar();
+            int n = Math.min(codificats.remaining(), actual.remaining());
+            int limit = codificats.limit();
+            codificats.limit(codificats.position() + n);
+            actual.put(codificats);
+            codificats.limit(limit);
+        }
+    }
+
+    /** @brief Passa el buffer actual al fil d'escriptura
+	@pre  ---
+	@post El buffer actual està pendent d'escriure i actual és l'altre buffer, buit
+    */
+    private void enviar() throws IOException {
+        actual.flip();
+        posar(plens, actual);
+        actual = prendre(lliures);
+        actual.clear();
+    }
+
+    /** @brief Espera que el fil d'escriptura acabi el buffer que està escrivint
+	@pre  actual no conté res pendent d'enviar
+	@post Tots els buffers enviats s'han escrit
+    */
+    private void esperar() throws IOException {
+        ByteBuffer b = prendre(lliures);
+        posar(lliures, b);
+    }
+
+    /** @brief Escriu els buffers plens al fitxer, en ordre, fins a la marca de final
+	@pre  Es crida des del fil d'escriptura
+	@post S'han escrit tots els buffers enviats; si n'ha fallat un, error en conté la causa i els següents es descarten
+    */
+    private void escriure(){
+        while (true) {
+            ByteBuffer b;
+            try {
+                b = plens.take();
+            }
+            catch (InterruptedException e) {
+                error = new InterruptedIOException("S'ha interromput l'escriptura de la sortida");
+                return;
+            }
+            if (b == FI) return;
+            try {
+                while (error == null && b.hasRemaining()) canal.write(b);
+            }
+            catch (IOException e) {
+                error = e;
+            }
+            b.clear();
+            lliures.add(b);
+        }
+    }
+
+    /** @brief Comprova que no hi hagi hagut cap error
+	@pre  ---
+	@post ---
+    */
+    //Excepcions: IOException si l'escriptor està tancat o ha fallat una escriptura
+    private void comprovar() throws IOException {
+        if (tancat) throw new IOException("L'escriptor està tancat");
+        if (error != null) throw error;
+    }
+
+    /** @brief Afegeix b a la cua q
+	@pre  ---
+	@post b és a q
+    */
+    private static void posar(BlockingQueue<ByteBuffer> q, ByteBuffer b) throws InterruptedIOException {
+        try {
+            q.put(b);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("S'ha interromput l'escriptura de la sortida");
+        }
+    }
+
+    /** @brief Treu un buffer de la cua q
+	@pre  ---
+	@post Retorna el primer buffer de q, esperant-lo si cal
+    */
+    private static ByteBuffer prendre(BlockingQueue<ByteBuffer> q) throws InterruptedIOException {
+        try {
+            return q.take();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("S'ha interromput l'escriptura de la sortida");
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/** @file EstatVectors.java
+    @brief Classe EstatVectors
+*/
+
+/** @class EstatVectors
+    @brief Còpia modificable de l'estat d'una instantània en vectors
+    @author Roger Costa
+*/
+
+public class EstatVectors implements EstatXarxa {
+    //Descripció general: Estat (aixetes, demandes, cabals i capacitats) guardat en vectors indexats per una
+    //                    InstantaniaXarxa, per calcular amb els motors un estat diferent del de la xarxa sense
+    //                    modificar-la. Es crea copiant l'estat actual de la xarxa o un altre EstatVectors.
+
+    private final boolean[] oberta;     ///< Estat de l'aixeta de cada node
+    private final float[] demanda;      ///< Demanda actual de cada node
+    private final float[] cabal;        ///< Cabal de cada node
+    private final float[] capacitat;    ///< Capacitat de cada canonada
+
+    /** @brief Copia l'estat actual de la xarxa de la instantània s
+	@pre  s no és null
+	@post Els vectors contenen l'estat actual dels nodes i les canonades de s
+    */
+    public EstatVectors(InstantaniaXarxa s){
+        int n = s.nombreNodes();
+        int m = s.nombreCanonades();
+        oberta = new boolean[n];
+        demanda = new float[n];
+        cabal = new float[n];
+        capacitat = new float[m];
+        for (int i = 0; i < n; i++) {
+            oberta[i] = s.aixetaOberta(i);
+            demanda[i] = s.demandaActual(i);
+            cabal[i] = s.cabal(i);
+        }
+        for (int k = 0; k < m; k++) capacitat[k] = s.capacitat(k);
+    }
+
+    /** @brief Copia l'estat e
+	@pre  e no és null
+	@post Els vectors contenen el mateix estat que e; els canvis d'un no afecten l'altre
+    */
+    public EstatVectors(EstatVectors e){
+        oberta = e.oberta.clone();
+        demanda = e.demanda.clone();
+        cabal = e.cabal.clone();
+        capacitat = e.capacitat.clone();
+    }
+
+    @Override
+    public boolean aixetaOberta(int i){
+        return oberta[i];
+    }
+
+    @Override
+    public float demandaActual(int i){
+        return demanda[i];
+    }
+
+    @Override
+    public float cabal(int i){
+        return cabal[i];
+    }
+
+    @Override
+    public float capacitat(int k){
+        return capacitat[k];
+    }
+
+    /** @brief Canvia l'estat de l'aixeta del node i
+	@pre  i és un índex de la instantània
+	@post aixetaOberta(i) val oberta
+    */
+    public void establirAixeta(int i, boolean oberta){
+        this.oberta[i] = oberta;
+    }
+
+    /** @brief Canvia la demanda actual del node i
+	@pre  i és un índex d'un terminal de la instantània
+	@post demandaActual(i) val demanda
+    */
+    public void establirDemanda(int i, float demanda){
+        this.demanda[i] = demanda;
+    }
+
+    /** @brief Canvia el cabal del node i
+	@pre  i és un índex d'un origen de la instantània
+	@post cabal(i) val cabal
+    */
+    public void establirCabal(int i, float cabal){
+        this.cabal[i] = cabal;
+    }
+
+    /** @brief Canvia la capacitat de la canonada k
+	@pre  k és una posició de canonada de la instantània
+	@post capacitat(k) val capacitat
+    */
+    public void establirCapacitat(int k, float capacitat){
+        this.capacitat[k] = capacitat;
+    }
+}
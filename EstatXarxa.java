@@ -0,0 +1,38 @@
+/** @file EstatXarxa.java
+    @brief Interfície EstatXarxa
+*/
+
+/** @class EstatXarxa
+    @brief Estat variable dels nodes i canonades d'una instantània: aixetes, demandes, cabals i capacitats
+    @author Roger Costa
+*/
+
+public interface EstatXarxa {
+    //Descripció general: Valors que poden canviar sense canviar la topologia, indexats pels índexs d'una
+    //                    InstantaniaXarxa. La mateixa instantània dona l'estat actual de la xarxa (el que tenen els
+    //                    nodes i les canonades); una VersioXarxa en dona un altre sense modificar-los.
+
+    /** @brief Estat de l'aixeta del node i
+	@pre  i és un índex de la instantània
+	@post Retorna true si l'aixeta del node i és oberta
+    */
+    boolean aixetaOberta(int i);
+
+    /** @brief Demanda actual del node i
+	@pre  i és un índex de la instantània
+	@post Retorna la demanda actual del node i si és un terminal, 0 altrament
+    */
+    float demandaActual(int i);
+
+    /** @brief Cabal del node i
+	@pre  i és un índex de la instantània
+	@post Retorna el cabal del node i si és un origen, 0 altrament
+    */
+    float cabal(int i);
+
+    /** @brief Capacitat de la canonada k
+	@pre  k és una posició de canonada de la instantània
+	@post Retorna la capacitat de la canonada k
+    */
+    float capacitat(int k);
+}
@@ -0,0 +1,204 @@
+/** @file EstructuraXarxa.java
+    @brief Classe EstructuraXarxa
+*/
+
+/** @class EstructuraXarxa
+    @brief Índex de components fortament connexes d'una instantània, que diu per cada origen si té cicles o és un arbre
+    @author Roger Costa
+*/
+
+import java.util.Arrays;
+
+public class EstructuraXarxa {
+    //Descripció general: Es construeix una sola vegada per instantània (és a dir, per versió de la topologia) amb un
+    //                    recorregut de Tarjan iteratiu. Els nodes accessibles des d'un origen no tenen cicles (en el
+    //                    sentit de GestorXarxes.teCicles) si i només si cada component fortament connexa accessible és
+    //                    un arbre amb les canonades en els dos sentits, i cada component accessible, llevat de la de
+    //                    l'origen, hi entra una sola canonada des dels nodes accessibles. Tarjan numera les components
+    //                    de manera que les que són accessibles des d'una component tenen un número menor, i per
+    //                    això el resultat de cada component es calcula a partir de les següents en una sola passada.
+    //                    Quan només comptant les canonades que entren a una component no es pot decidir (hi entren
+    //                    canonades des de nodes que potser no són accessibles, o hi ha canonades repetides), el
+    //                    resultat de l'origen es calcula amb un recorregut la primera vegada que es demana.
+
+    private static final byte ARBRE = 1;    ///< Els nodes accessibles des de la component no tenen cicles
+    private static final byte CICLES = 2;   ///< Els nodes accessibles des de la component tenen cicles
+    private static final byte DEPEN = 3;    ///< Cal un recorregut per saber-ho
+
+    private final InstantaniaXarxa s;       ///< Instantània
+    private final int[] component;          ///< Component fortament connexa de cada node
+    private final int nombreComponents;     ///< Nombre de components fortament connexes
+    private final byte[] estat;             ///< ARBRE, CICLES o DEPEN per cada component
+    private final boolean[] simple;         ///< Diu si totes les components accessibles des de cada component tenen un sol node
+    private final byte[] resolts;           ///< Resultat del recorregut de cada node (0 si no s'ha fet, ARBRE o CICLES)
+
+    /** @brief Construeix l'índex de la instantània s
+	@pre  s no és null
+	@post S'han calculat les components fortament connexes de s i l'estat de cadascuna
+    */
+    public EstructuraXarxa(InstantaniaXarxa s){
+        this.s = s;
+        int n = s.nombreNodes();
+        component = new int[n];
+        resolts = new byte[n];
+
+        //Tarjan iteratiu; els nodes de cada component queden seguits a membres, per ordre de component
+        int[] ordre = new int[n];
+        int[] baix = new int[n];
+        int[] seguent = new int[n];
+        int[] pila = new int[n];
+        int[] crides = new int[n];
+        int[] membres = new int[n];
+        int[] iniciMembres = new int[n+1];
+        boolean[] enPila = new boolean[n];
+        Arrays.fill(ordre, -1);
+        int comptador = 0, cimPila = 0, nc = 0, fiMembres = 0;
+        for (int arrel = 0; arrel < n; arrel++) {
+            if (ordre[arrel] >= 0) continue;
+            int cim = 0;
+            crides[cim++] = arrel;
+            ordre[arrel] = baix[arrel] = comptador++;
+            seguent[arrel] = s.iniciSortides(arrel);
+            pila[cimPila++] = arrel;
+            enPila[arrel] = true;
+            while (cim > 0) {
+                int u = crides[cim-1];
+                if (seguent[u] < s.fiSortides(u)) {
+                    int w = s.desti(seguent[u]++);
+                    if (ordre[w] < 0) {
+                        ordre[w] = baix[w] = comptador++;
+                        seguent[w] = s.iniciSortides(w);
+                        pila[cimPila++] = w;
+                        enPila[w] = true;
+                        crides[cim++] = w;
+                    }
+                    else if (enPila[w]) baix[u] = Math.min(baix[u], ordre[w]);
+                }
+                else {
+                    cim--;
+                    if (cim > 0) baix[crides[cim-1]] = Math.min(baix[crides[cim-1]], baix[u]);
+                    if (baix[u] == ordre[u]) {
+                        int w;
+                        do {
+                            w = pila[--cimPila];
+                            enPila[w] = false;
+                            component[w] = nc;
+                            membres[fiMembres++] = w;
+                        } while (w != u);
+                        iniciMembres[++nc] = fiMembres;
+                    }
+                }
+            }
+        }
+        nombreComponents = nc;
+
+        //Canonades que entren a cada component des de fora
+        int[] entrades = new int[nc];
+        for (int k = 0; k < s.nombreCanonades(); k++) {
+            if (component[s.origen(k)] != component[s.desti(k)]) entrades[component[s.desti(k)]]++;
+        }
+
+        //Estat de cada component a partir de les components a les quals arriba, que tenen un número menor
+        estat = new byte[nc];
+        simple = new boolean[nc];
+        int[] marcaNode = new int[n];
+        int[] marcaComponent = new int[nc];
+        Arrays.fill(marcaNode, -1);
+        Arrays.fill(marcaComponent, -1);
+        for (int c = 0; c < nc; c++) {
+            int mida = iniciMembres[c+1] - iniciMembres[c];
+            int internes = 0, diferents = 0;
+            boolean invertides = true, cicles = false, depen = false, simples = true;
+            for (int p = iniciMembres[c]; p < iniciMembres[c+1]; p++) {
+                int u = membres[p];
+                for (int k = s.iniciSortides(u); k < s.fiSortides(u); k++) {
+                    int w = s.desti(k);
+                    int d = component[w];
+                    if (d == c) {
+                        internes++;
+                        if (marcaNode[w] != u) diferents++;
+                        marcaNode[w] = u;
+                    }
+                    else {
+                        if (marcaComponent[d] == c || estat[d] == CICLES) cicles = true;
+                        else if (estat[d] == DEPEN || entrades[d] > 1) depen = true;
+                        marcaComponent[d] = c;
+                        simples &= simple[d];
+                    }
+                }
+                //Cada canonada interna x -> u ha de tenir la inversa u -> x, que s'acaba de marcar
+                for (int j = s.iniciEntrades(u); j < s.fiEntrades(u); j++) {
+                    int x = s.origenEntrada(j);
+                    if (component[x] == c && marcaNode[x] != u) invertides = false;
+                }
+            }
+            if (!invertides || diferents != 2 * (mida - 1)) cicles = true;
+            else if (internes != diferents) depen = true;
+            estat[c] = cicles ? CICLES : depen ? DEPEN : ARBRE;
+            simple[c] = simples && mida == 1 && internes == 0;
+        }
+    }
+
+    /** @brief Retorna el nombre de components fortament connexes
+	@pre  ---
+	@post Retorna el nombre de components fortament connexes de la instantània
+    */
+    public int nombreComponents(){
+        return nombreComponents;
+    }
+
+    /** @brief Diu si els nodes accessibles des del node i tenen cicles
+	@pre  0 <= i < s.nombreNodes()
+	@post Retorna el mateix que GestorXarxes.teCicles per al node d'índex i
+    */
+    public boolean teCicles(int i){
+        byte e = estat[component[i]];
+        if (e == DEPEN) {
+            e = resolts[i];
+            if (e == 0) {
+                e = recorregut(i) ? CICLES : ARBRE;
+                resolts[i] = e;
+            }
+        }
+        return e == CICLES;
+    }
+
+    /** @brief Diu si els nodes accessibles des del node i formen un arbre
+	@pre  0 <= i < s.nombreNodes()
+	@post Retorna el mateix que GestorXarxes.esArbre per al node d'índex i
+    */
+    public boolean esArbre(int i){
+        return simple[component[i]] && !teCicles(i);
+    }
+
+    /** @brief Recorregut en amplada des del node inici
+	@pre  0 <= inici < s.nombreNodes()
+	@post Retorna true si el recorregut arriba a un node ja visitat que no és el pare del node actual
+    */
+    private boolean recorregut(int inici){
+        //El recorregut no surt de la component connexa d'inici: els vectors es limiten als seus nodes
+        int base = s.iniciComponent(s.component(inici));
+        int mida = s.fiComponent(s.component(inici)) - base;
+        boolean[] visitats = new boolean[mida];
+        int[] pare = new int[mida];
+        int[] cua = new int[mida];
+        int cap = 0, fi = 0;
+        cua[fi++] = inici;
+        visitats[inici - base] = true;
+        pare[inici - base] = -1;
+
+        while (cap < fi) {
+            int nodeActual = cua[cap++];
+            for (int k = s.iniciSortides(nodeActual); k < s.fiSortides(nodeActual); k++) {
+                int desti = s.desti(k);
+                if (visitats[desti - base] && pare[nodeActual - base] != desti) return true;
+                if (!visitats[desti - base]) {
+                    cua[fi++] = desti;
+                    visitats[desti - base] = true;
+                    pare[desti - base] = nodeActual;
+                }
+            }
+        }
+        return false;
+    }
+}
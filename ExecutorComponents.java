@@ -0,0 +1,80 @@
+/** @file ExecutorComponents.java
+    @brief Classe ExecutorComponents
+*/
+
+/** @class ExecutorComponents
+    @brief Executa una tasca per cada component connexa d'una instantània, en paral·lel
+    @author Roger Costa
+*/
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+public class ExecutorComponents {
+    //Descripció general: Reparteix les components connexes d'una instantània entre els fils del ForkJoinPool comú,
+    //                    dividint recursivament el conjunt de components per la meitat dels nodes. Les components
+    //                    són independents (cap canonada va d'una a una altra), de manera que les tasques poden
+    //                    escriure sense sincronització als vectors indexats per node o per canonada sempre que
+    //                    cadascuna només toqui les posicions de la seva component. Les xarxes petites s'executen
+    //                    en el fil que crida.
+
+    static final int LLINDAR = 8192; ///< Nombre de nodes per sota del qual no es divideix la feina
+
+    private ExecutorComponents() {}
+
+    /** @brief Executa tasca per cada component de s
+	@pre  tasca(c) només modifica dades de la component c
+	@post S'ha executat tasca(c) per cada component c de s, i tots els seus efectes són visibles en retornar
+    */
+    public static void executar(InstantaniaXarxa s, IntConsumer tasca){
+        int k = s.nombreComponents();
+        if (k == 0) return;
+        if (k == 1 || s.nombreNodes() < LLINDAR) {
+            for (int c = 0; c < k; c++) tasca.accept(c);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new Tasca(s, tasca, 0, k));
+    }
+
+    /** @class Tasca
+        @brief Execució de les components [primera, fi)
+    */
+    private static class Tasca extends RecursiveAction {
+        private static final long serialVersionUID = 1L;   ///< Versió de serialització de RecursiveAction
+        private final InstantaniaXarxa s;   ///< Instantània
+        private final IntConsumer tasca;    ///< Tasca de cada component
+        private final int primera;          ///< Primera component
+        private final int fi;               ///< Component següent a l'última
+
+        /** @brief Crea l'execució de les components [primera, fi)
+	    @pre  0 <= primera < fi <= s.nombreComponents()
+	    @post S'ha creat l'execució
+        */
+        Tasca(InstantaniaXarxa s, IntConsumer tasca, int primera, int fi){
+            this.s = s;
+            this.tasca = tasca;
+            this.primera = primera;
+            this.fi = fi;
+        }
+
+        /** @brief Executa la tasca per les components [primera, fi)
+	    @pre  ---
+	    @post Si les components sumen pocs nodes s'executen en aquest fil; si no, es divideixen en dues meitats de
+                  nodes que s'executen en paral·lel
+        */
+        @Override
+        protected void compute(){
+            int nodes = s.fiComponent(fi - 1) - s.iniciComponent(primera);
+            if (fi - primera == 1 || nodes < LLINDAR) {
+                for (int c = primera; c < fi; c++) tasca.accept(c);
+                return;
+            }
+            //Component on cau la meitat dels nodes
+            int meitat = s.iniciComponent(primera) + nodes / 2;
+            int mig = s.component(meitat);
+            if (mig <= primera) mig = primera + 1;
+            invokeAll(new Tasca(s, tasca, primera, mig), new Tasca(s, tasca, mig, fi));
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/** @file FitxerXarxa.java
+    @brief Classe FitxerXarxa
+*/
+
+/** @class FitxerXarxa
+    @brief Lectura i escriptura d'una xarxa en un fitxer binari
+    @author Roger Costa
+*/
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class FitxerXarxa {
+    //Descripció general: Format binari d'una xarxa, per no haver de refer-la operació a operació a cada execució.
+    //                    El fitxer té una capçalera (número màgic i versió del format) i quatre seccions:
+    //                    - cadenes: identificadors dels nodes i dels abonats, cadascun un sol cop (llargada i UTF-8);
+    //                    - nodes: en l'ordre en què es van afegir, amb la cadena del seu identificador, el tipus,
+    //                      l'estat de l'aixeta, les coordenades, i el cabal (origens) o les demandes (terminals);
+    //                    - canonades: número del node d'inici i del de fi, i capacitat;
+    //                    - abonats: cadena de l'abonat i número del terminal on està abonat.
+    //                    Els fitxers es llegeixen i s'escriuen projectant-los a memòria amb un FileChannel.
+
+    private static final int MAGIC = 0x58415258;   ///< "XARX"
+    private static final int VERSIO = 1;           ///< Versió del format
+
+    private static final byte ORIGEN = 0;          ///< Tipus de node origen
+    private static final byte TERMINAL = 1;        ///< Tipus de node terminal
+    private static final byte CONNEXIO = 2;        ///< Tipus de node connexió
+
+    private FitxerXarxa() {}
+
+    /** @brief Desa la xarxa x al fitxer fitxer
+	@pre  ---
+	@post El fitxer fitxer conté la xarxa x (si ja existia, s'ha substituït)
+    */
+    //Excepcions: IOException si no es pot escriure el fitxer
+    static void desar(Xarxa x, String fitxer) throws IOException {
+        //Cadenes i números de node
+        Map<String,Integer> cadena = new HashMap<>();
+        List<byte[]> cadenes = new ArrayList<>();
+        Map<Node,Integer> numero = new HashMap<>();
+        List<Node> nodes = new ArrayList<>(x.nodes());
+        for (Node n : nodes) {
+            numero.put(n, numero.size());
+            internar(n.id(), cadena, cadenes);
+        }
+        for (String client : x.abonats().keySet()) internar(client, cadena, cadenes);
+
+        List<Canonada> canonades = new ArrayList<>();
+        for (Node n : nodes) {
+            Iterator<Canonada> it = x.sortides(n);
+            if (it == null) continue;
+            while (it.hasNext()) canonades.add(it.next());
+        }
+
+        long mida = 4 + 4 + 4;
+        for (byte[] b : cadenes) mida += 4 + b.length;
+        mida += 4;
+        for (Node n : nodes) mida += 4 + 1 + 1 + 4 + 4 + (n instanceof Terminal ? 8 : n instanceof Origen ? 4 : 0);
+        mida += 4 + (long) canonades.size() * 12;
+        mida += 4 + (long) x.abonats().size() * 8;
+
+        Path cami = Paths.get(fitxer);
+        try (FileChannel canal = FileChannel.open(cami, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                  StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_WRITE, 0, mida);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSIO);
+
+            buf.putInt(cadenes.size());
+            for (byte[] b : cadenes) {
+                buf.putInt(b.length);
+                buf.put(b);
+            }
+
+            buf.putInt(nodes.size());
+            for (Node n : nodes) {
+                buf.putInt(cadena.get(n.id()));
+                buf.put(n instanceof Origen ? ORIGEN : n instanceof Terminal ? TERMINAL : CONNEXIO);
+                buf.put((byte) (n.aixetaOberta() ? 1 : 0));
+                buf.putFloat(n.coordenades().latitud);
+                buf.putFloat(n.coordenades().longitud);
+                if (n instanceof Origen) buf.putFloat(((Origen) n).cabal());
+                else if (n instanceof Terminal) {
+                    buf.putFloat(((Terminal) n).demanda());
+                    buf.putFloat(((Terminal) n).demandaActual());
+                }
+            }
+
+            buf.putInt(canonades.size());
+            for (Canonada c : canonades) {
+                buf.putInt(numero.get(c.node1()));
+                buf.putInt(numero.get(c.node2()));
+                buf.putFloat(c.capacitat());
+            }
+
+            buf.putInt(x.abonats().size());
+            for (Map.Entry<String,Node> e : x.abonats().entrySet()) {
+                buf.putInt(cadena.get(e.getKey()));
+                buf.putInt(numero.get(e.getValue()));
+            }
+            buf.force();
+        }
+    }
+
+    /** @brief Llegeix una xarxa del fitxer fitxer
+	@pre  ---
+	@post Retorna la xarxa desada al fitxer fitxer
+    */
+    //Excepcions: IOException si no es pot llegir el fitxer o no té el format d'una xarxa
+    static Xarxa obrir(String fitxer) throws IOException {
+        try (FileChannel canal = FileChannel.open(Paths.get(fitxer), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = canal.map(FileChannel.MapMode.READ_ONLY, 0, canal.size());
+            try {
+                if (buf.getInt() != MAGIC) throw new IOException("El fitxer " + fitxer + " no conté una xarxa");
+                int versio = buf.getInt();
+                if (versio != VERSIO) throw new IOException("Versió del format de xarxa desconeguda: " + versio);
+
+                String[] cadenes = new String[comptador(buf)];
+                for (int i = 0; i < cadenes.length; i++) {
+                    byte[] b = new byte[comptador(buf)];
+                    buf.get(b);
+                    cadenes[i] = new String(b, StandardCharsets.UTF_8);
+                }
+
+                Xarxa x = new Xarxa();
+                Node[] nodes = new Node[comptador(buf)];
+                boolean[] oberta = new boolean[nodes.length];
+                for (int i = 0; i < nodes.length; i++) {
+                    String id = cadena(cadenes, buf.getInt());
+                    byte tipus = buf.get();
+                    oberta[i] = buf.get() != 0;
+                    Coordenades c = new Coordenades(buf.getFloat(), buf.getFloat());
+                    if (tipus == ORIGEN) {
+                        Origen o = new Origen(id, c);
+                        x.afegir(o);
+                        float cabal = buf.getFloat();
+                        if (cabal != 0) x.establirCabal(o, cabal);
+                        nodes[i] = o;
+                    }
+                    else if (tipus == TERMINAL) {
+                        Terminal t = new Terminal(id, c, buf.getFloat());
+                        x.afegir(t);
+                        float demanda = buf.getFloat();
+                        if (demanda != 0) x.establirDemanda(t, demanda);
+                        nodes[i] = t;
+                    }
+                    else if (tipus == CONNEXIO) {
+                        Connexio n = new Connexio(id, c);
+                        x.afegir(n);
+                        nodes[i] = n;
+                    }
+                    else throw new IOException("Tipus de node desconegut: " + tipus);
+                }
+
+                int nCanonades = comptador(buf);
+                for (int k = 0; k < nCanonades; k++) {
+                    Node n1 = node(nodes, buf.getInt());
+                    Node n2 = node(nodes, buf.getInt());
+                    x.connectarAmbCanonada(n1, n2, buf.getFloat());
+                }
+
+                //Les aixetes es tanquen al final, com si s'haguessin tancat després de construir la xarxa
+                for (int i = 0; i < nodes.length; i++) {
+                    if (!oberta[i]) x.tancarAixeta(nodes[i]);
+                }
+
+                int nAbonats = comptador(buf);
+                for (int a = 0; a < nAbonats; a++) {
+                    String client = cadena(cadenes, buf.getInt());
+                    Node n = node(nodes, buf.getInt());
+                    if (!(n instanceof Terminal)) throw new IOException("L'abonat " + client + " no està abonat a un terminal");
+                    x.abonar(client, (Terminal) n);
+                }
+                //La xarxa llegida és el punt de partida: no es pot desfer
+                x.oblidarCanvis();
+                return x;
+            }
+            catch (BufferUnderflowException e) {
+                throw new IOException("El fitxer " + fitxer + " està truncat");
+            }
+        }
+    }
+
+    /** @brief Afegeix s a les cadenes si encara no hi és
+	@pre  ---
+	@post cadena conté s, associada a la seva posició a cadenes
+    */
+    private static void internar(String s, Map<String,Integer> cadena, List<byte[]> cadenes){
+        if (cadena.containsKey(s)) return;
+        cadena.put(s, cadenes.size());
+        cadenes.add(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** @brief Llegeix un nombre d'elements de buf
+	@pre  ---
+	@post Retorna l'enter següent de buf
+    */
+    //Excepcions: IOException si l'enter és negatiu
+    private static int comptador(MappedByteBuffer buf) throws IOException {
+        int n = buf.getInt();
+        if (n < 0 || n > buf.remaining()) throw new IOException("Nombre d'elements incorrecte: " + n);
+        return n;
+    }
+
+    /** @brief Retorna la cadena i
+	@pre  ---
+	@post Retorna cadenes[i]
+    */
+    //Excepcions: IOException si i no és una cadena del fitxer
+    private static String cadena(String[] cadenes, int i) throws IOException {
+        if (i < 0 || i >= cadenes.length) throw new IOException("Cadena inexistent: " + i);
+        return cadenes[i];
+    }
+
+    /** @brief Retorna el node i
+	@pre  ---
+	@post Retorna nodes[i]
+    */
+    //Excepcions: IOException si i no és un node del fitxer
+    private static Node node(Node[] nodes, int i) throws IOException {
+        if (i < 0 || i >= nodes.length) throw new IOException("Node inexistent: " + i);
+        return nodes[i];
+    }
+}
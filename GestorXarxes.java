@@ -8,6 +8,8 @@
 */
 
 import java.util.*;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 public class GestorXarxes {
 
@@ -21,32 +23,37 @@ public class GestorXarxes {
     public static boolean teCicles(Xarxa x, Origen nodeOrigen) {
         if (x == null || nodeOrigen == null) {
             System.out.println("Error amb les dades");
+            return false;
         }
-        else {
-            Set<Node> visitats = new HashSet<>();
-            Map<Node, Node> pare = new HashMap<>();
-            Queue<Node> cua = new LinkedList<>();
-            cua.offer(nodeOrigen);
-            visitats.add(nodeOrigen);
-
-            while (!cua.isEmpty()) {
-                Node nodeActual = cua.poll();
-                Iterator<Canonada> veins = x.sortides(nodeActual);
-                while (veins != null && veins.hasNext()) {
-                    Canonada canonada = veins.next();
-                    Node desti = canonada.node2();
-                    if (visitats.contains(desti) && pare.get(nodeActual) != desti) {
-                        return true;
-                    }
-                    if (!visitats.contains(desti)) {
-                        cua.offer(desti);
-                        visitats.add(desti);
-                        pare.put(desti, nodeActual);
-                    }
-                }
-            }
+        return teCicles(x.snapshot(), nodeOrigen);
+    }
+
+    /** @brief Diu, per cada origen de la xarxa x, si la seva component connexa té cicles
+	@pre  x no és null
+	@post Retorna, en l'ordre de la instantània, cada origen de la xarxa x associat a teCicles(x, origen)
+    */
+    public static Map<Origen, Boolean> teCicles(Xarxa x) {
+        InstantaniaXarxa s = x.snapshot();
+        EstructuraXarxa e = s.estructura();
+        Map<Origen, Boolean> res = new LinkedHashMap<>();
+        for (int i = 0; i < s.nombreNodes(); i++) {
+            if (s.tipus(i) == InstantaniaXarxa.ORIGEN) res.put((Origen) s.node(i), e.teCicles(i));
+        }
+        return res;
+    }
+
+    /** @brief Diu si la component connexa de la instantània s que conté nodeOrigen té cicles
+	@pre  nodeOrigen pertany a la instantània s
+	@post Retorna true si la component connexa de la instantània s que conté nodeOrigen té cicles
+    */
+    public static boolean teCicles(InstantaniaXarxa s, Origen nodeOrigen) {
+        if (s == null || nodeOrigen == null) {
+            System.out.println("Error amb les dades");
+            return false;
         }
-        return false;
+        int inici = s.index(nodeOrigen);
+        if (inici < 0) return false;
+        return s.estructura().teCicles(inici);
     }
 
     /** @brief Diu si la component connexa de la xarxa x que conté nodeOrigen és un arbre
@@ -54,43 +61,25 @@ public class GestorXarxes {
 	@post Retorna true si la component connexa de la xarxa x que conté nodeOrigen és un arbre
     */
     public static boolean esArbre(Xarxa x, Origen nodeOrigen) {
-        if (teCicles(x, nodeOrigen)) {
+        if (x == null || nodeOrigen == null) {
+            System.out.println("Error amb les dades");
             return false;
         }
-        Map<Node, Integer> arestes = new HashMap<>();
-        Set<Node> visitats = new HashSet<>();
-        visitats.add(nodeOrigen);
-        Queue<Node> nodes = new LinkedList<>();
-        nodes.add(nodeOrigen);
-
-        while (!nodes.isEmpty()) {
-            Node actual = nodes.remove();
-            Iterator<Canonada> sortides = x.sortides(actual);
-
-            if (sortides != null) {
-                while (sortides.hasNext()) {
-                    Canonada can = sortides.next();
-                    Node dest = can.node2();
-                    arestes.put(dest, arestes.getOrDefault(dest, 0) + 1);
-
-                    if (!visitats.contains(dest)) {
-                        visitats.add(dest);
-                        nodes.add(dest);
-                    }
-                }
-            }
-        }
+        return esArbre(x.snapshot(), nodeOrigen);
+    }
 
-        for (Map.Entry<Node, Integer> entrada : arestes.entrySet()) {
-            if (entrada.getKey().equals(nodeOrigen)) {
-                if (entrada.getValue() != 0)
-                    return false;
-            } else {
-                if (entrada.getValue() != 1)
-                    return false;
-            }
+    /** @brief Diu si la component connexa de la instantània s que conté nodeOrigen és un arbre
+	@pre   nodeOrigen pertany a la instantània s
+	@post Retorna true si la component connexa de la instantània s que conté nodeOrigen és un arbre
+    */
+    public static boolean esArbre(InstantaniaXarxa s, Origen nodeOrigen) {
+        if (s == null || nodeOrigen == null) {
+            System.out.println("Error amb les dades");
+            return false;
         }
-        return true;
+        int inici = s.index(nodeOrigen);
+        if (inici < 0) return true;
+        return s.estructura().esArbre(inici);
     }
 
     /** @brief Diu el cabal mínim que hi ha d'haver entre tots els origens perquè s'assoleixi el tant per cent de la demanda total.
@@ -105,32 +94,34 @@ public class GestorXarxes {
             System.out.println("La xarxa té cicles o no és un arbre");
         }
         else {
-            Set<Node> origens = x.origensXarxa(nodeOrigen);
+            InstantaniaXarxa s = x.snapshot();
+            int o = s.index(nodeOrigen);
+            if (o < 0) return 0;
             Map<Terminal, Float> cabalsMinims = new HashMap<>();
-            Queue<Node> nodes = new LinkedList<>();
-            for (Node origen : origens) {
-                if (origen.aixetaOberta()) {
+            boolean[] visitats = new boolean[s.nombreNodes()];
+            Queue<Integer> nodes = new ArrayDeque<>();
+            for (int origen : s.indexComponents().origens(o)) {
+                if (s.aixetaOberta(origen)) {
                     nodes.add(origen);
+                    visitats[origen] = true;
                 }
             }
 
             while (!nodes.isEmpty()) {
-                Node actual = nodes.poll();
-                Iterator<Canonada> sortides = x.sortides(actual);
+                int actual = nodes.poll();
+                for (int k = s.iniciSortides(actual); k < s.fiSortides(actual); k++) {
+                    int desti = s.desti(k);
+                    if (s.aixetaOberta(desti) && !visitats[desti]) {
+                        if (s.tipus(desti) == InstantaniaXarxa.TERMINAL) {
 
-                while (sortides != null && sortides.hasNext()) {
-                    Canonada can = sortides.next();
-                    Node desti = can.node2();
-                    if (desti.aixetaOberta() && !nodes.contains(desti)) {
-                        if (desti instanceof Terminal) {
-
-                            Terminal ter = (Terminal) desti;
+                            Terminal ter = (Terminal) s.node(desti);
                             float demandaActual = ter.demandaActual();
                             float demandaMinima = demandaActual * (percentatgeDemandaSatisfet / 100);
                             cabalsMinims.put(ter, demandaMinima);
 
                         } else {
                             nodes.add(desti);
+                            visitats[desti] = true;
                         }
                     }
                 }
@@ -144,107 +135,87 @@ public class GestorXarxes {
         return 0;
     }
 
-    /** @brief Crea un conjunt dels Terminals que es poden accedir desde inici
-	@pre  inici pertany a la xarxa x 
-	@post Retorna una llista amb tots els terminals accessibles des del node inici
+    /** @brief Retorna tots els origens connectats a l'origen o de la instantània s
+	@pre  o és l'índex d'un origen de s
+	@post Retorna els índexs dels origens connectats a o, amb el mateix criteri que Xarxa.origensXarxa
     */
-    private static List<Terminal> terminals(Node inici, Xarxa x) {
-        if (inici == null) {
-            return new ArrayList<>();
-        }
-        List<Terminal> terminals = new ArrayList<>();
-        List<Node> visitats = new ArrayList<>();
-        Queue<Node> cua = new LinkedList<>();
-        cua.add(inici);
-        if (inici instanceof Terminal) {
-            terminals.add((Terminal) inici);
-        }
-        while (!cua.isEmpty()) {
-            Node current = cua.poll();
-            visitats.add(current);
-
-            processarSortides(current, x, terminals, visitats, cua);
-            processarEntrades(current, x, terminals, visitats, cua);
-        }
-        return terminals;
-    }
-
-    /** @brief Processa les sortides del node current, afegint els nodes terminals a la llista terminals i els nodes visitats a la cua
-	@pre  current, x, terminals, visitats i cua no són nulls 
-	@post Processa les sortides del node current, afegint els nodes terminals a la llista terminals i els nodes visitats a la cua
-    */
-    private static void processarSortides(Node current, Xarxa x, List<Terminal> terminals, List<Node> visitats, Queue<Node> cua) {
-        Iterator<Canonada> sortides = x.sortides(current);
-        while (sortides != null && sortides.hasNext()) {
-            Node actual = sortides.next().node2();
-            if (actual instanceof Terminal) {
-                if (!terminals.contains((Terminal) actual)) {
-                    terminals.add((Terminal) actual);
-                }
-            }
-            if (!visitats.contains(actual)) {
-                cua.add(actual);
-            }
-        }
-    }
-
-    /** @brief Processa les entrades del node current, afegint els nodes terminals a la llista terminals i els nodes visitats a la cua
-	@pre  current, x, terminals, visitats i cua no són nulls 
-	@post Processa les entrades del node current, afegint els nodes terminals a la llista terminals i els nodes visitats a la cua
-    */
-    private static void processarEntrades(Node current, Xarxa x, List<Terminal> terminals, List<Node> visitats, Queue<Node> cua) {
-        Iterator<Canonada> entrades = x.entrades(current);
-        while (entrades != null && entrades.hasNext()) {
-            Node actual = entrades.next().node1();
-            if (actual instanceof Terminal) {
-                if (!terminals.contains((Terminal) actual)) {
-                    terminals.add((Terminal) actual);
-                }
-            }
-            if (!visitats.contains(actual)) {
-                cua.add(actual);
-            }
-        }
+    static List<Integer> origens(InstantaniaXarxa s, int o) {
+        return s.indexComponents().origens(o);
     }
 
    /** @brief Trobar un origen de la xarxa
-    @pre  Node n pertany a la xarxa
-    @post   Retorna un origen de la xarxa que conté el node n
+    @pre  n pertany a la instantània s
+    @post   Retorna l'índex d'un origen de la xarxa que conté el node n, -1 si no se'n troba cap
     */
-private static Origen trobarOrigen(Node n, Xarxa x) {
-    if (n instanceof Origen) {
-        return (Origen) n;
+private static int trobarOrigen(int n, InstantaniaXarxa s) {
+    if (n < 0 || s.tipus(n) == InstantaniaXarxa.ORIGEN) {
+        return n;
     }
-    Iterator<Canonada> canonadesEntrants = x.entrades(n);
-    while (canonadesEntrants != null && canonadesEntrants.hasNext()) {
-        Canonada canonada = canonadesEntrants.next();
-        Node nodeAnterior = canonada.node1();
-        Origen origenTrobat = trobarOrigen(nodeAnterior, x);
-        if (origenTrobat != null) {
-            return origenTrobat;
+    //Recorregut en profunditat amb pila explícita cap amunt per les canonades d'entrada, en el mateix ordre que la
+    //versió recursiva: es retorna el primer origen que es troba. Un node ja visitat no pot portar a cap origen nou
+    int base = s.iniciComponent(s.component(n));
+    int mida = s.fiComponent(s.component(n)) - base;
+    int[] pila = new int[mida];
+    int[] seguent = new int[mida];
+    boolean[] visitats = new boolean[mida];
+    int cim = 0;
+    pila[cim++] = n;
+    seguent[n - base] = s.iniciEntrades(n);
+    visitats[n - base] = true;
+    while (cim > 0) {
+        int actual = pila[cim-1];
+        if (seguent[actual - base] == s.fiEntrades(actual)) {
+            cim--;
+            continue;
+        }
+        int node = s.origenEntrada(seguent[actual - base]++);
+        if (s.tipus(node) == InstantaniaXarxa.ORIGEN) {
+            return node;
+        }
+        if (!visitats[node - base]) {
+            visitats[node - base] = true;
+            seguent[node - base] = s.iniciEntrades(node);
+            pila[cim++] = node;
         }
     }
-    return null;
+    return -1;
 }
 /** @brief Retorna les canonades entrades que tenen un exces de cabal
  @pre  origen pertany a la xarxa x i Set<Canonada> canonades no és buit
  @post   Retorna totes les canonades del Set<Canonada> canonades que Tenen un excés de cabal si repartim el cabal proporcional a la demanda dels temrinals.
  */
 public static Set<Canonada> excesCabal(Xarxa x, Set<Canonada> canonades) {
+    InstantaniaXarxa s = x.snapshot();
+    return excesCabal(s, canonades, origen -> x.memoria().obtenir(x.versio(), Arrays.asList("excesCabal", origen), () -> cabalsRepartits(s, origen)));
+}
+
+/** @brief Retorna les canonades entrades que tenen un exces de cabal
+ @pre  origen pertany a la instantània s i Set<Canonada> canonades no és buit
+ @post   Retorna totes les canonades del Set<Canonada> canonades que Tenen un excés de cabal si repartim el cabal proporcional a la demanda dels temrinals.
+ */
+public static Set<Canonada> excesCabal(InstantaniaXarxa s, Set<Canonada> canonades) {
+    return excesCabal(s, canonades, origen -> cabalsRepartits(s, origen));
+}
+
+/** @brief Retorna les canonades entrades que tenen un exces de cabal, obtenint el cabal de cada canonada amb cabals
+ @pre  Set<Canonada> canonades no és buit i cabals.apply(o) retorna cabalsRepartits(s, o)
+ @post   Retorna totes les canonades del Set<Canonada> canonades que Tenen un excés de cabal si repartim el cabal proporcional a la demanda dels temrinals.
+ */
+private static Set<Canonada> excesCabal(InstantaniaXarxa s, Set<Canonada> canonades, IntFunction<float[]> cabals) {
     Set<Canonada> can=canonades;
     Canonada c1=can.iterator().next();
-    Origen origen=trobarOrigen(c1.node1(),x);
+    int origen=trobarOrigen(s.index(c1.node1()),s);
     Set<Canonada> canonadesExces = new HashSet<>();
-    if (teCicles(x, origen)) {
+    if (origen < 0 || teCicles(s, (Origen) s.node(origen))) {
         System.out.println("La xarxa té cicles o no és un arbre");
     }
     else {
 
-        Map<Node, Float> demandaAcumulada = calcularDemandaAcumulada(x, origen);
-        Map<Canonada, Float> cabalCanonades = calcularCabalCanonades(x, origen, demandaAcumulada);
+        float[] cabalCanonades = cabals.apply(origen);
         for (Canonada canonada : canonades) {
             float capacitat = canonada.capacitat();
-            float cabal = cabalCanonades.getOrDefault(canonada, 0f);
+            int k = s.posicio(canonada);
+            float cabal = k < 0 ? 0f : cabalCanonades[k];
             if (cabal > capacitat) {
                 canonadesExces.add(canonada);
             }
@@ -254,62 +225,172 @@ public static Set<Canonada> excesCabal(Xarxa x, Set<Canonada> canonades) {
     return canonadesExces;
 }
 
-/** @brief Calcula la demanda acumulada de la xarxa x a partir del node d'origen
- @pre  origen pertany a la xarxa x
- @post  Retorna un mapa amb la demanda acumulada per cada node de la xarxa x
+/** @brief Cabal de cada canonada de la component d'origen repartint el cabal proporcionalment a la demanda dels terminals
+ @pre  origen pertany a la instantània s i la seva component no té cicles
+ @post   Retorna el cabal de cada canonada, indexat per la seva posició a la instantània
+ */
+private static float[] cabalsRepartits(InstantaniaXarxa s, int origen) {
+    float[] demandaAcumulada = new float[s.nombreNodes()];
+    boolean[] ambDemanda = new boolean[s.nombreNodes()];
+    float[] cabalCanonades = new float[s.nombreCanonades()];
+    calcularDemandaAcumulada(s, origen, demandaAcumulada, ambDemanda);
+    calcularCabalCanonades(s, origen, demandaAcumulada, ambDemanda, cabalCanonades);
+    return cabalCanonades;
+}
+
+/** @brief Retorna les canonades de tota la xarxa x que tenen un excés de cabal
+ @pre  x no és null
+ @post   Retorna, en l'ordre de la instantània, les canonades que tenen un excés de cabal si repartim el cabal de cada
+         origen proporcionalment a la demanda dels terminals, amb els mateixos criteris que auditarExcesCabal
+ */
+public static Set<Canonada> excesCabal(Xarxa x) {
+    return new LinkedHashSet<>(auditarExcesCabal(x).keySet());
+}
+
+/** @brief Audita totes les canonades de la xarxa x
+ @pre  x no és null
+ @post   Retorna, en l'ordre de la instantània, cada canonada que té un excés de cabal si repartim el cabal de cada
+         origen proporcionalment a la demanda dels terminals, associada al quocient entre el seu cabal i la seva
+         capacitat. Com a excesCabal(x, canonades), no es tenen en compte els grups d'origens connectats on tots els
+         origens tenen cicles, ni les components on alguna canonada tanca un cicle.
+ */
+public static Map<Canonada, Float> auditarExcesCabal(Xarxa x) {
+    InstantaniaXarxa s = x.snapshot();
+    float[] cabals = x.memoria().obtenir(x.versio(), "auditoriaExces", () -> cabalsAuditoria(s));
+    Map<Canonada, Float> res = new LinkedHashMap<>();
+    for (int k = 0; k < s.nombreCanonades(); k++) {
+        float capacitat = s.canonada(k).capacitat();
+        if (cabals[k] > capacitat) res.put(s.canonada(k), cabals[k] / capacitat);
+    }
+    return res;
+}
+
+/** @brief Cabal de cada canonada de la instantània s repartint el cabal de cada origen proporcionalment a la demanda
+ @pre  ---
+ @post   Retorna, indexat per la posició de cada canonada, el cabal més gran que hi passa entre els grups d'origens
+         connectats de la seva component que tenen algun origen sense cicles; és 0 a les components on alguna
+         canonada tanca un cicle
  */
-private static Map<Node, Float> calcularDemandaAcumulada(Xarxa x, Origen origen) {
-    Map<Node, Float> demandaAcumulada = new HashMap<>();
-
-    for (Terminal term : terminals(origen, x)) {
-        float demandaTotal = term.demandaActual();
-        float totalCapacitat = calcularTotalCapacitat(x.entrades(term));
-        Iterator<Canonada> canonadesEntrants = x.entrades(term);
-        demandaAcumulada.merge(term, demandaTotal, Float::sum);
-        while (canonadesEntrants != null && canonadesEntrants.hasNext()) {
-            Canonada canonada = canonadesEntrants.next();
-            Node nodeOrigen = canonada.node1();
-            if (nodeOrigen.aixetaOberta()) {
-                float part = canonada.capacitat() / totalCapacitat;
-                float valor = demandaTotal * part;
-                demandaAcumulada.merge(nodeOrigen, valor, Float::sum);
-                propagarDemandaAcumulada(x, demandaAcumulada, nodeOrigen, valor);
+private static float[] cabalsAuditoria(InstantaniaXarxa s) {
+    //Cada tasca només fa servir les posicions de la seva component, de manera que els vectors es comparteixen
+    float[] demandaAcumulada = new float[s.nombreNodes()];
+    boolean[] ambDemanda = new boolean[s.nombreNodes()];
+    float[] cabalNodes = new float[s.nombreNodes()];
+    boolean[] tractat = new boolean[s.nombreNodes()];
+    float[] cabals = new float[s.nombreCanonades()];
+    int[] ordre = s.ordreTopologic();
+    ExecutorComponents.executar(s, c -> {
+        int inici = s.iniciComponent(c), fi = s.fiComponent(c);
+        int primera = s.iniciSortides(inici), darrera = s.fiSortides(fi - 1);
+        //La demanda es propaga per tota la component, de manera que un cicle a qualsevol lloc la invalida
+        for (int k = primera; k < darrera; k++) {
+            if (!s.endavant(k)) return;
+        }
+
+        //Demanda acumulada en una sola passada en ordre topològic invers: quan es tracta un node ja li ha arribat
+        //tota la demanda de sota, i es reparteix entre les canonades d'entrada proporcionalment a la capacitat
+        for (int p = fi - 1; p >= inici; p--) {
+            int v = ordre[p];
+            if (s.tipus(v) == InstantaniaXarxa.TERMINAL) {
+                demandaAcumulada[v] += s.demandaActual(v);
+                ambDemanda[v] = true;
+            }
+            if (!ambDemanda[v]) continue;
+            float totalCapacitat = calcularTotalCapacitat(s, v);
+            for (int j = s.iniciEntrades(v); j < s.fiEntrades(v); j++) {
+                int pare = s.origenEntrada(j);
+                if (s.aixetaOberta(pare)) {
+                    demandaAcumulada[pare] += demandaAcumulada[v] * (s.capacitat(s.canonadaEntrada(j)) / totalCapacitat);
+                    ambDemanda[pare] = true;
+                }
             }
         }
+
+        //Cabal de cada grup d'origens connectats en una passada en ordre topològic, proporcional a la demanda. Com a
+        //excesCabal(x, canonades), que només ho calcula si l'origen de les canonades no té cicles, es deixen els grups
+        //on tots els origens en tenen
+        for (int o = inici; o < fi; o++) {
+            if (s.tipus(o) != InstantaniaXarxa.ORIGEN || tractat[o]) continue;
+            List<Integer> grup = origens(s, o);
+            boolean senseCicles = false;
+            for (int altre : grup) {
+                tractat[altre] = true;
+                if (!teCicles(s, (Origen) s.node(altre))) senseCicles = true;
+            }
+            if (!senseCicles) continue;
+            Arrays.fill(cabalNodes, inici, fi, 0f);
+            for (int altre : grup) cabalNodes[altre] += s.cabal(altre);
+            for (int p = inici; p < fi; p++) {
+                int v = ordre[p];
+                if (cabalNodes[v] == 0) continue;
+                float totalDemanda = calcularTotalDemanda(s, v, demandaAcumulada, ambDemanda);
+                if (totalDemanda == 0) continue;
+                for (int k = s.iniciSortides(v); k < s.fiSortides(v); k++) {
+                    int d = s.desti(k);
+                    if (s.aixetaOberta(d) && ambDemanda[d]) {
+                        float valor = cabalNodes[v] * (demandaAcumulada[d] / totalDemanda);
+                        cabalNodes[d] += valor;
+                        cabals[k] = Math.max(cabals[k], valor);
+                    }
+                }
+            }
+        }
+    });
+    return cabals;
+}
+
+/** @brief Calcula la demanda acumulada de la xarxa a partir del node d'origen
+ @pre  origen pertany a la instantània s, demandaAcumulada i ambDemanda tenen mida s.nombreNodes() i estan a zero
+ @post  demandaAcumulada conté la demanda acumulada per cada node, i ambDemanda diu a quins nodes n'ha arribat
+ */
+private static void calcularDemandaAcumulada(InstantaniaXarxa s, int origen, float[] demandaAcumulada, boolean[] ambDemanda) {
+    //Tots els terminals de la component d'origen
+    IndexComponents index = s.indexComponents();
+    Propagacio pila = new Propagacio(s.fiComponent(s.component(origen)) - s.iniciComponent(s.component(origen)));
+    for (int p = index.iniciTerminals(s.component(origen)); p < index.fiTerminals(s.component(origen)); p++) {
+        int term = index.terminal(p);
+        float demandaTotal = ((Terminal) s.node(term)).demandaActual();
+        demandaAcumulada[term] += demandaTotal;
+        ambDemanda[term] = true;
+        propagarDemandaAcumulada(s, demandaAcumulada, ambDemanda, term, demandaTotal, pila);
     }
-    return demandaAcumulada;
 }
 
     /** @brief   Propaga la demanda acumulada pels nodes de la xarxa
-     @pre  ---
+     @pre  pila és buida i té capacitat per tants nodes com la component de origen
      @post  Propaga la demanda acumulada pels nodes de la xarxa. Ho fa proporcional a la capacitat.
      */
-    private static void propagarDemandaAcumulada(Xarxa x, Map<Node, Float> demandaAcumulada, Node origen, float demanda) {
-        Iterator<Canonada> canonadesEntrants = x.entrades(origen);
-        float demandaTotal = demanda;
-        float totalCapacitat = calcularTotalCapacitat(x.entrades(origen));
-        while (canonadesEntrants != null && canonadesEntrants.hasNext()) {
-            Canonada canonada = canonadesEntrants.next();
-            Node actual = canonada.node1();
-            if (actual.aixetaOberta()) {
-                float part = canonada.capacitat() / totalCapacitat;
-                float valor = demandaTotal * part;
-                demandaAcumulada.merge(actual, valor, Float::sum);
-                propagarDemandaAcumulada(x, demandaAcumulada, actual, valor);
+    private static void propagarDemandaAcumulada(InstantaniaXarxa s, float[] demandaAcumulada, boolean[] ambDemanda, int origen, float demanda, Propagacio pila) {
+        //Mateix ordre que el recorregut recursiu: cada nivell de la pila és un node amb la demanda que hi ha arribat i
+        //la canonada d'entrada per on continua
+        pila.posar(origen, s.iniciEntrades(origen), demanda, calcularTotalCapacitat(s, origen));
+        while (!pila.buida()) {
+            int node = pila.node();
+            int j = pila.seguent();
+            if (j == s.fiEntrades(node)) {
+                pila.treure();
+                continue;
+            }
+            int actual = s.origenEntrada(j);
+            if (s.node(actual).aixetaOberta()) {
+                float part = s.capacitat(s.canonadaEntrada(j)) / pila.total();
+                float valor = pila.valor() * part;
+                demandaAcumulada[actual] += valor;
+                ambDemanda[actual] = true;
+                pila.posar(actual, s.iniciEntrades(actual), valor, calcularTotalCapacitat(s, actual));
             }
         }
     }
 
-    /** @brief  Calcula la capacitat total de les canonades
-     @pre  ---
-     @post  Retorna un float que representa la suma de totes les capacitats de les canonades entrades
+    /** @brief  Calcula la capacitat total de les canonades que entren al node
+     @pre  node pertany a la instantània s
+     @post  Retorna un float que representa la suma de les capacitats de les canonades que entren a node des d'un node amb l'aixeta oberta
      */
-    private static float calcularTotalCapacitat(Iterator<Canonada> canonades) {
+    private static float calcularTotalCapacitat(InstantaniaXarxa s, int node) {
         float totalCapacitat = 0;
-        while (canonades != null && canonades.hasNext()) {
-            Canonada canonadaActual = canonades.next();
-            if (canonadaActual.node1().aixetaOberta()) {
-                totalCapacitat += canonadaActual.capacitat();
+        for (int j = s.iniciEntrades(node); j < s.fiEntrades(node); j++) {
+            if (s.node(s.origenEntrada(j)).aixetaOberta()) {
+                totalCapacitat += s.capacitat(s.canonadaEntrada(j));
             }
         }
         return totalCapacitat;
@@ -317,82 +398,148 @@ private static Map<Node, Float> calcularDemandaAcumulada(Xarxa x, Origen origen)
 
 
 
-    /** @brief  Calcula la demanda total a partir de les canonades entrades
-     @pre  ---
-     @post  Retorna la suma de totes les demandes de les canonades entrades
+    /** @brief  Calcula la demanda total a partir de les canonades que surten del node
+     @pre  node pertany a la instantània s
+     @post  Retorna la suma de totes les demandes acumulades dels nodes oberts on arriben les canonades que surten de node
      */
-    private static float calcularTotalDemanda(Iterator<Canonada> canonades, Map<Node, Float> demandaAcumulada) {
+    private static float calcularTotalDemanda(InstantaniaXarxa s, int node, float[] demandaAcumulada, boolean[] ambDemanda) {
         float totalDemanda = 0;
-        while (canonades != null && canonades.hasNext()) {
-            Canonada canonadaActual = canonades.next();
-            Node nodeDesti = canonadaActual.node2();
-            if (nodeDesti.aixetaOberta()) {
-                if (demandaAcumulada.containsKey(nodeDesti)) {
-                    totalDemanda += demandaAcumulada.get(nodeDesti);
-                }
+        for (int k = s.iniciSortides(node); k < s.fiSortides(node); k++) {
+            int nodeDesti = s.desti(k);
+            if (s.node(nodeDesti).aixetaOberta() && ambDemanda[nodeDesti]) {
+                totalDemanda += demandaAcumulada[nodeDesti];
             }
         }
         return totalDemanda;
     }
 
     /** @brief  Calcula el cabal que passa per cada canonada
-     @pre  ---
-     @post  Retorna un mapa amb el cabal que passa per cada canonada
+     @pre  cabalCanonades té mida s.nombreCanonades() i és zero a les canonades de la component d'origen
+     @post  cabalCanonades conté el cabal que passa per cada canonada, indexat per la seva posició a la instantània
      */
-    private static Map<Canonada, Float> calcularCabalCanonades(Xarxa x, Origen origen, Map<Node, Float> demandaAcumulada) {
-        Map<Canonada, Float> cabalCanonades = new HashMap<>();
-        Queue<Node> cua = new LinkedList<>();
-
-        for (Node ori : x.origensXarxa(origen)) {
-            Origen o = (Origen) ori;
-            float cabalTotal = o.cabal();
-            float totalDemanda = calcularTotalDemanda(x.sortides(o), demandaAcumulada);
-            Iterator<Canonada> canonadesSortides = x.sortides(o);
-
-            while (canonadesSortides != null && canonadesSortides.hasNext()) {
-                Canonada canonada = canonadesSortides.next();
-                Node nodeOrigen = canonada.node2();
-                if (nodeOrigen.aixetaOberta()) {
-                    if (!cua.contains(nodeOrigen)) {
-                        cua.add(nodeOrigen);
-                    }
-                    Float demandaOrigen = demandaAcumulada.get(nodeOrigen);
-                    if (demandaOrigen != null && totalDemanda != 0) {
-                        float part = demandaOrigen / totalDemanda;
-                        float valor = cabalTotal * part;
-                        cabalCanonades.merge(canonada, valor, Float::sum);
-                        propagarCabalCanonades(x, cabalCanonades, demandaAcumulada, nodeOrigen, valor);
-                    }
-                }
-            }
+    private static void calcularCabalCanonades(InstantaniaXarxa s, int origen, float[] demandaAcumulada, boolean[] ambDemanda, float[] cabalCanonades) {
+        Propagacio pila = new Propagacio(s.fiComponent(s.component(origen)) - s.iniciComponent(s.component(origen)));
+        for (int o : origens(s, origen)) {
+            float cabalTotal = ((Origen) s.node(o)).cabal();
+            propagarCabalCanonades(s, cabalCanonades, demandaAcumulada, ambDemanda, o, cabalTotal, pila);
         }
-        return cabalCanonades;
     }
 
     /** @brief  Propaga el cabal per cada canonada
-     @pre  ---
+     @pre  pila és buida i té capacitat per tants nodes com la component de origen
      @post  Propaga el cabal per cada canonada proporcional a la demanda
      */
-    private static void propagarCabalCanonades(Xarxa x, Map<Canonada, Float> cabalCanonades, Map<Node, Float> demandaAcumulada, Node origen, float cabal) {
-        Iterator<Canonada> canonadesSortides = x.sortides(origen);
-        float cabalTotal = cabal;
-        float totalDemanda = calcularTotalDemanda(x.sortides(origen), demandaAcumulada);
-
-        while (canonadesSortides != null && canonadesSortides.hasNext()) {
-            Canonada canonada = canonadesSortides.next();
-            Node actual = canonada.node2();
-            if (actual.aixetaOberta()) {
-                Float demandaNode = demandaAcumulada.get(actual);
-                if (demandaNode != null && totalDemanda != 0) {
-                    float part = demandaNode / totalDemanda;
-                    float valor = cabalTotal * part;
-                    cabalCanonades.merge(canonada, valor, Float::sum);
-                    propagarCabalCanonades(x, cabalCanonades, demandaAcumulada, actual, valor);
+    private static void propagarCabalCanonades(InstantaniaXarxa s, float[] cabalCanonades, float[] demandaAcumulada, boolean[] ambDemanda, int origen, float cabal, Propagacio pila) {
+        //Mateix ordre que el recorregut recursiu: cada nivell de la pila és un node amb el cabal que hi ha arribat i
+        //la canonada de sortida per on continua
+        pila.posar(origen, s.iniciSortides(origen), cabal, calcularTotalDemanda(s, origen, demandaAcumulada, ambDemanda));
+        while (!pila.buida()) {
+            int node = pila.node();
+            int k = pila.seguent();
+            if (k == s.fiSortides(node)) {
+                pila.treure();
+                continue;
+            }
+            int actual = s.desti(k);
+            if (s.node(actual).aixetaOberta()) {
+                if (ambDemanda[actual] && pila.total() != 0) {
+                    float part = demandaAcumulada[actual] / pila.total();
+                    float valor = pila.valor() * part;
+                    cabalCanonades[k] += valor;
+                    pila.posar(actual, s.iniciSortides(actual), valor, calcularTotalDemanda(s, actual, demandaAcumulada, ambDemanda));
                 }
             }
         }
     }
 
+    /** @class Propagacio
+        @brief Pila explícita de propagarDemandaAcumulada i propagarCabalCanonades, en vectors reaprofitables
+    */
+    private static class Propagacio {
+        //Cada nivell guarda el node, la posició de la canonada següent per on continuar, el valor que ha arribat al
+        //node i el total pel qual es reparteix. Un camí amb més nivells que nodes de la component passa dues vegades
+        //pel mateix node (és un cicle, que la versió recursiva no acabava mai): no s'hi continua.
+
+        private final int[] node;       ///< Node de cada nivell
+        private final int[] seguent;    ///< Canonada següent de cada nivell
+        private final float[] valor;    ///< Valor arribat a cada nivell
+        private final float[] total;    ///< Total pel qual es reparteix a cada nivell
+        private int cim;                ///< Nombre de nivells
+
+        /** @brief Crea una pila buida de com a molt mida nivells
+	    @pre  mida > 0
+	    @post La pila és buida
+        */
+        Propagacio(int mida){
+            node = new int[mida];
+            seguent = new int[mida];
+            valor = new float[mida];
+            total = new float[mida];
+            cim = 0;
+        }
+
+        /** @brief Afegeix un nivell
+	    @pre  ---
+	    @post Si hi cabia, el nivell (n, primera, v, t) és el cim de la pila
+        */
+        void posar(int n, int primera, float v, float t){
+            if (cim == node.length) return;
+            node[cim] = n;
+            seguent[cim] = primera;
+            valor[cim] = v;
+            total[cim] = t;
+            cim++;
+        }
+
+        /** @brief Diu si la pila és buida
+	    @pre  ---
+	    @post Retorna true si la pila no té cap nivell
+        */
+        boolean buida(){
+            return cim == 0;
+        }
+
+        /** @brief Treu el cim de la pila
+	    @pre  La pila no és buida
+	    @post S'ha tret el cim de la pila
+        */
+        void treure(){
+            cim--;
+        }
+
+        /** @brief Node del cim
+	    @pre  La pila no és buida
+	    @post Retorna el node del cim
+        */
+        int node(){
+            return node[cim-1];
+        }
+
+        /** @brief Canonada següent del cim
+	    @pre  La pila no és buida
+	    @post Retorna la posició de la canonada següent del cim i avança el cim a la posterior
+        */
+        int seguent(){
+            return seguent[cim-1]++;
+        }
+
+        /** @brief Valor del cim
+	    @pre  La pila no és buida
+	    @post Retorna el valor arribat al node del cim
+        */
+        float valor(){
+            return valor[cim-1];
+        }
+
+        /** @brief Total del cim
+	    @pre  La pila no és buida
+	    @post Retorna el total pel qual es reparteix al node del cim
+        */
+        float total(){
+            return total[cim-1];
+        }
+    }
+
 
 /** @brief Retorna el conjunt de nodes n de la xarxa x més propers (seguint la topologia) als terminals t de aiguaArriba, tals que per sota de n la situació actual de la xarxa és incoherent amb aiguaArriba
 	@pre  Tots els terminals de aiguaArriba pertanyen a la xarxa x, aiguaArriba.get(t) indica si arriba aigua a t, i la xarxa x té forma d'arbre 
@@ -401,43 +548,45 @@ private static Map<Node, Float> calcularDemandaAcumulada(Xarxa x, Origen origen)
 public static Set<Node> aixetesTancar(Xarxa x, Map<Terminal, Boolean> aiguaArriba) {
     Iterator<Terminal> iterator = aiguaArriba.keySet().iterator();
     Node n = iterator.next();
-    Origen origen = trobarOrigen(n, x);
-    if (teCicles(x, origen)) {
+    InstantaniaXarxa s = x.snapshot();
+    int o = trobarOrigen(s.index(n), s);
+    Origen origen = o < 0 ? null : (Origen) s.node(o);
+    if (teCicles(s, origen)) {
         System.out.println("La xarxa no és un arbre");
     }
     else {
+        //Una sola passada en postordre (ordre topològic invers): per cada node se sap si per sota hi ha terminals amb
+        //aigua (o dels quals no se sap res) i si hi ha terminals sense aigua que hi pugen per la primera canonada
+        //d'entrada de cada node, que és el camí que segueix la situació reportada fins als origens
+        int[] ordre = s.ordreTopologic();
+        boolean[] ambAigua = new boolean[s.nombreNodes()];
+        boolean[] senseAigua = new boolean[s.nombreNodes()];
+        for (int p = s.nombreNodes() - 1; p >= 0; p--) {
+            int v = ordre[p];
+            if (s.tipus(v) == InstantaniaXarxa.TERMINAL) {
+                boolean arriba = aiguaArriba.getOrDefault(s.node(v), true);
+                ambAigua[v] = arriba;
+                senseAigua[v] = !arriba;
+                continue;
+            }
+            for (int k = s.iniciSortides(v); k < s.fiSortides(v); k++) {
+                int w = s.desti(k);
+                if (ambAigua[w]) ambAigua[v] = true;
+                if (senseAigua[w] && s.origenEntrada(s.iniciEntrades(w)) == v) senseAigua[v] = true;
+            }
+        }
+
+        //Candidats: nodes per sobre d'algun terminal sense aigua que tenen per sota algun terminal amb aigua; es
+        //queden els que no tenen cap fill candidat
         Set<Node> resultatsPotencials = new HashSet<>();
-        for (Map.Entry<Terminal, Boolean> terminal : aiguaArriba.entrySet()) {
-            Terminal term = terminal.getKey();
-            boolean teAigua = terminal.getValue();
-
-            if (!teAigua) {
-                Node actual = term;
-
-                while (actual != null) {
-                    Iterator<Canonada> itCanonadesEntrada = x.entrades(actual);
-                    if (itCanonadesEntrada != null && itCanonadesEntrada.hasNext()) {
-                        Canonada canonada = itCanonadesEntrada.next();
-                        Node oriCan = canonada.node1();
-
-                        if (afecta(x, oriCan, aiguaArriba)) {
-                            resultatsPotencials.add(oriCan);
-                        }
-                        actual = oriCan;
-                    } else {
-                        break;
-                    }
-                }
-            }
+        for (int v = 0; v < s.nombreNodes(); v++) {
+            if (candidat(s, v, ambAigua, senseAigua)) resultatsPotencials.add(s.node(v));
         }
-
         Set<Node> resultatFinal = new HashSet<>(resultatsPotencials);
         for (Node node : resultatsPotencials) {
-            Iterator<Canonada> itCanonadesSortida = x.sortides(node);
-            while (itCanonadesSortida != null && itCanonadesSortida.hasNext()) {
-                Canonada canonada = itCanonadesSortida.next();
-                Node desti = canonada.node2();
-                if (resultatsPotencials.contains(desti)) {
+            int v = s.index(node);
+            for (int k = s.iniciSortides(v); k < s.fiSortides(v); k++) {
+                if (candidat(s, s.desti(k), ambAigua, senseAigua)) {
                     resultatFinal.remove(node);
                     break;
                 }
@@ -450,33 +599,13 @@ public static Set<Node> aixetesTancar(Xarxa x, Map<Terminal, Boolean> aiguaArrib
     return  r;
 }
 
-    /** @brief Diu si la situació actual de la xarxa és incoherent amb aiguaArriba per sota de node
-     @pre  node pertany a la xarxa x
-     @post Retorna true si la situació actual de la xarxa és incoherent amb aiguaArriba per sota de node
-     */
-    private static boolean afecta(Xarxa x, Node node, Map<Terminal, Boolean> aiguaArriba) {
-        Set<Node> visitats = new HashSet<>();
-        Stack<Node> stack = new Stack<>();
-        stack.push(node);
-
-        while (!stack.isEmpty()) {
-            Node actual = stack.pop();
-            if (visitats.contains(actual)) continue;
-            visitats.add(actual);
-
-            Iterator<Canonada> sortides = x.sortides(actual);
-            while (sortides != null && sortides.hasNext()) {
-                Canonada canonada = sortides.next();
-                Node desti = canonada.node2();
-                if (desti instanceof Terminal && aiguaArriba.getOrDefault(desti, true)) {
-                    return true;
-                }
-                if (!visitats.contains(desti)) {
-                    stack.push(desti);
-                }
-            }
-        }
-        return false;
+    /** @brief Diu si el node v és candidat a tancar
+	@pre  ambAigua i senseAigua s'han calculat a aixetesTancar
+	@post Retorna true si v no és un terminal, té per sota algun terminal amb aigua i està per sobre d'algun terminal
+	      sense aigua
+    */
+    private static boolean candidat(InstantaniaXarxa s, int v, boolean[] ambAigua, boolean[] senseAigua) {
+        return s.tipus(v) != InstantaniaXarxa.TERMINAL && ambAigua[v] && senseAigua[v];
     }
 
 
@@ -486,196 +615,207 @@ public static Set<Node> aixetesTancar(Xarxa x, Map<Terminal, Boolean> aiguaArrib
 	@post Retorna una llista amb els nodes de cjtNodes ordenats segons la seva distància a c i, en cas d'empat, en ordre alfabètic dels seus identificadors
     */
     public static List<Node> proximitat(Coordenades c, Set<Node> cjtNodes) {
+        return new IndexEspacial(cjtNodes).mesPropers(c, cjtNodes.size());
+    }
 
-        List<Node> resultat = new ArrayList<>(cjtNodes);
-        for (int i = 0; i < resultat.size() - 1; i++) {
-            int iMin = i;
-            for (int j = i + 1; j < resultat.size(); j++) {
-                Node actual = resultat.get(j);
-                Node nMin = resultat.get(iMin);
+    /** @brief Retorna els k nodes de la xarxa x més propers a c
+	@pre  k >= 0
+	@post Retorna els min(k, nombre de nodes) nodes de la xarxa x més propers a c, de més proper a menys, i en cas d'empat ordenats per identificador
+    */
+    public static List<Node> proximitat(Xarxa x, Coordenades c, int k) {
+        return x.indexEspacial().mesPropers(c, k);
+    }
 
-                double distActual = actual.coordenades().distancia(c);
-                double distNMin = nMin.coordenades().distancia(c);
+    /** @brief Retorna els nodes de la xarxa x que són a distància radi o menys de c
+	@pre  radi >= 0
+	@post Retorna els nodes de la xarxa x que són a radi km o menys de c, de més proper a menys, i en cas d'empat ordenats per identificador
+    */
+    public static List<Node> dinsRadi(Xarxa x, Coordenades c, double radi) {
+        return x.indexEspacial().dinsRadi(c, radi);
+    }
 
-                if (distActual < distNMin || (distActual == distNMin && actual.id().compareTo(nMin.id()) < 0)) {
-                    iMin = j;
-                }
-            }
-            Node tmp = resultat.get(i);
-            resultat.set(i, resultat.get(iMin));
-            resultat.set(iMin, tmp);
-        }
-        return resultat;
+    /** @brief Retorna els nodes de la xarxa x dins el rectangle que tenen c1 i c2 com a cantonades oposades
+	@pre  ---
+	@post Retorna els nodes de la xarxa x amb la latitud i la longitud entre les de c1 i c2, ordenats per identificador
+    */
+    public static List<Node> dinsRectangle(Xarxa x, Coordenades c1, Coordenades c2) {
+        return x.indexEspacial().dinsRectangle(c1, c2);
     }
 
-    /** @brief Crea un graf residual
-	@pre  nodeOrigen pertany a la xarxa x 
-	@post Construeix el graf residual de la xarxa x
+    /** @brief Avalua escenaris sobre la xarxa x sense modificar-la
+	@pre  ---
+	@post Retorna, en el mateix ordre que escenaris, la variació del cabal dels terminals de x que canvien amb cada
+	      escenari respecte de l'estat actual de x; els canvis incorrectes s'ignoren
     */
-    private static void construirGrafResidual(Xarxa x, Map<Node, List<Canonada>> grafResidual, Origen superOrigen, Terminal superTerminal, Origen nodeOrigen) {
-        Set<Node> origens = x.origensXarxa(nodeOrigen);
-        Queue<Node> cua = new LinkedList<>();
-        Queue<Node> visitats = new LinkedList<>();
-        for (Node origen : origens) {
-            Iterator<Canonada> sortides = x.sortides(origen);
-            while (sortides != null && sortides.hasNext()) {
-                Canonada canonada = sortides.next();
-                Node desti = canonada.node2();
-                afegirCanonadaResidual(grafResidual, superOrigen, desti, canonada.capacitatTemporal());
-                if (!cua.contains(desti)) {
-                    cua.add(desti);
+    //Excepcions: NoSuchElementException si un node d'un escenari no pertany a la xarxa (s'ignora el canvi)
+    //            IllegalArgumentException si una demanda o un cabal d'un escenari és negatiu o no és d'un terminal o un
+    //            origen (s'ignora el canvi)
+    public static List<ResultatEscenari> escenaris(Xarxa x, List<Escenari> escenaris) {
+        //Cada escenari es calcula en paral·lel sobre una còpia pròpia de l'estat de la xarxa, i només a les
+        //components on té algun canvi: la resta de components no canvien
+        InstantaniaXarxa s = x.snapshot();
+        ResultatCabal actual = x.calcularCabals();
+        EstatVectors estatActual = new EstatVectors(s);
+
+        //Els nodes es busquen abans, en ordre, perquè els errors surtin en l'ordre dels escenaris
+        int[][] indexs = new int[escenaris.size()][];
+        for (int e = 0; e < escenaris.size(); e++) indexs[e] = indexs(s, escenaris.get(e));
+
+        ResultatEscenari[] resultats = new ResultatEscenari[escenaris.size()];
+        IntStream.range(0, escenaris.size()).parallel().forEach(e ->
+            resultats[e] = avaluar(s, actual, estatActual, escenaris.get(e), indexs[e]));
+        return Arrays.asList(resultats);
+    }
+
+    /** @brief Índexs a la instantània s dels nodes dels canvis de l'escenari e
+	@pre  ---
+	@post Retorna l'índex a s del node de cada canvi de e, -1 per als canvis que s'han d'ignorar
+    */
+    private static int[] indexs(InstantaniaXarxa s, Escenari e) {
+        int[] index = new int[e.nombreCanvis()];
+        for (int j = 0; j < index.length; j++) {
+            index[j] = -1;
+            try {
+                int i = e.node(j) == null ? -1 : s.index(e.node(j));
+                if (i < 0) throw new NoSuchElementException("El node no pertany a la xarxa");
+                if (e.tipus(j) == DiariCanvis.DEMANDA) {
+                    if (s.tipus(i) != InstantaniaXarxa.TERMINAL) throw new IllegalArgumentException("El node " + e.node(j).id() + " no és un terminal");
+                    if (e.valor(j) < 0) throw new IllegalArgumentException("La demanda no pot ser negativa");
                 }
-            }
-        }
-        while (!cua.isEmpty()) {
-            Node actual = cua.poll();
-            Iterator<Canonada> sortides = x.sortides(actual);
-            while (sortides != null && sortides.hasNext()) {
-                visitats.add(actual);
-                Canonada canonada = sortides.next();
-                Node desti = canonada.node2();
-                if (!visitats.contains(desti)) {
-                    if (!cua.contains(desti)) {
-                        cua.add(desti);
-                    }
-                    if (desti instanceof Terminal) {
-                        afegirCanonadaResidual(grafResidual, actual, superTerminal, canonada.capacitatTemporal());
-                    } else {
-                        afegirCanonadaResidual(grafResidual, actual, desti, canonada.capacitatTemporal());
-                    }
+                if (e.tipus(j) == DiariCanvis.CABAL) {
+                    if (s.tipus(i) != InstantaniaXarxa.ORIGEN) throw new IllegalArgumentException("El node " + e.node(j).id() + " no és un origen");
+                    if (e.valor(j) < 0) throw new IllegalArgumentException("Cabal no pot ser negatiu cabal ha de ser >=0");
                 }
+                index[j] = i;
+            }
+            catch (NoSuchElementException ex) {
+                System.out.println("\nError a les dades --> " + ex.getMessage());
+            }
+            catch (IllegalArgumentException ex) {
+                System.out.println("\nError a les dades --> " + ex.getMessage());
             }
         }
+        return index;
+    }
+
+    /** @brief Avalua l'escenari e
+	@pre  actual és el resultat de l'estat actual de la xarxa de s i estatActual n'és una còpia; index és el resultat
+	      de indexs(s, e)
+	@post Retorna la variació del cabal dels terminals que canvien amb e
+    */
+    private static ResultatEscenari avaluar(InstantaniaXarxa s, ResultatCabal actual, EstatVectors estatActual, Escenari e, int[] index) {
+        EstatVectors estat = new EstatVectors(estatActual);
+        BitSet tocades = new BitSet(s.nombreComponents());
+        for (int j = 0; j < index.length; j++) {
+            int i = index[j];
+            if (i < 0) continue;
+            if (e.tipus(j) == DiariCanvis.AIXETA) estat.establirAixeta(i, e.valor(j) != 0);
+            else if (e.tipus(j) == DiariCanvis.DEMANDA) estat.establirDemanda(i, e.valor(j));
+            else if (e.tipus(j) == DiariCanvis.CABAL) estat.establirCabal(i, e.valor(j));
+            tocades.set(s.component(i));
+        }
+        int[] components = tocades.stream().toArray();
+        ResultatCabal r = MotorCabal.calcular(s, MotorDemanda.calcular(s, estat, components), estat, components);
+
+        Map<Terminal,Float> variacions = new LinkedHashMap<>();
+        for (int c : components) {
+            for (int i = s.iniciComponent(c); i < s.fiComponent(c); i++) {
+                if (s.tipus(i) != InstantaniaXarxa.TERMINAL) continue;
+                float v = r.cabal(i) - actual.cabal(i);
+                if (v != 0) variacions.put((Terminal) s.node(i), v);
+            }
+        }
+        return new ResultatEscenari(e, variacions);
     }
 
     /** @brief Calcula el flux màxim de la xarxa x a partir del node d'origen
 	@pre   nodeOrigen pertany a la xarxa x 
-	@post Calcula el flux màxim de la xarxa x a partir del node d'origen
+	@post Retorna el flux màxim de la component de x que conté nodeOrigen calculat amb l'algorisme de Dinic, null si nodeOrigen no pertany a x
     */
-    public static void fluxMaxim(Xarxa x, Origen nodeOrigen) {
-
-        Map<Node, List<Canonada>> grafResidual = new HashMap<>();
-        List<Canonada> cami;
-        Origen superOrigen = new Origen("superOrigen", new Coordenades("0:0:0N,0:0:0E"));
-        Terminal superTerminal = new Terminal("superTerminal", new Coordenades("0:0:10N,0:0:10E"), Float.MAX_VALUE);
-        construirGrafResidual(x, grafResidual, superOrigen, superTerminal, nodeOrigen);
-
-        while ((cami = bfs(superOrigen, superTerminal, grafResidual)) != null) {
-            float camiFlow = Float.MAX_VALUE;
-            for (Canonada canonada : cami) {
-                camiFlow = Math.min(camiFlow, canonada.capacitatTemporal());
-            }
-
-            for (Canonada canonada : cami) {
-                Node u = canonada.node1();
-                Node v = canonada.node2();
-                canonadaReduirCapacitat(grafResidual, u, v, camiFlow);
-            }
-        }
-
-        construirXarxaResidual(grafResidual);
+    public static ResultatFluxMaxim fluxMaxim(Xarxa x, Origen nodeOrigen) {
+        return fluxMaxim(x, nodeOrigen, AlgorismeFluxMaxim.DINIC);
     }
 
-    /** @brief Dona un posible cami del graf residual desde un origen per arribar a terminal
-	@pre  origen i terminal pertanyen a grafResidual 
-	@post Retorna un camí del graf residual des d'origen fins a terminal
+    /** @brief Calcula el flux màxim de la xarxa x a partir del node d'origen amb l'algorisme algorisme
+	@pre   nodeOrigen pertany a la xarxa x 
+	@post Retorna el flux màxim de la component de x que conté nodeOrigen, null si nodeOrigen no pertany a x
     */
-    private static List<Canonada> bfs(Node origen, Node terminal, Map<Node, List<Canonada>> grafResidual) {
-
-        Map<Node, Canonada> cami = new HashMap<>();
-        Set<Node> visitats = new HashSet<>();
-        Queue<Node> cua = new LinkedList<>();
-        cua.add(origen);
-        visitats.add(origen);
-
-        while (!cua.isEmpty()) {
-            Node actual = cua.poll();
-            List<Canonada> canonades = grafResidual.get(actual);
-            if (canonades != null) {
-                for (Canonada canonada : canonades) {
-                    Node v = canonada.node2();
-                    if (!visitats.contains(v) && canonada.capacitatTemporal() > 0) {
-                        visitats.add(v);
-                        cami.put(v, canonada);
-                        cua.add(v);
-                        if (v.equals(terminal)) {
-                            return construirCami(cami, v);
-                        }
-                    }
-                }
-            }
+    //Excepcions: NoSuchElementException si nodeOrigen no pertany a la xarxa
+    public static ResultatFluxMaxim fluxMaxim(Xarxa x, Origen nodeOrigen, AlgorismeFluxMaxim algorisme) {
+        //El graf residual de cada origen es conserva mentre no canviï la topologia: després de tancar o obrir aixetes
+        //o de canviar capacitats només es repara el flux de les arestes afectades i es continua augmentant
+        try {
+            InstantaniaXarxa s = x.snapshot();
+            int inici = s.index(nodeOrigen);
+            if (inici < 0) throw new NoSuchElementException("El node no pertany a la xarxa");
+
+            MotorFluxMaxim motor = x.memoriaTopologia().obtenir(x.versioTopologia(), Arrays.asList("fluxMaxim", inici), () -> new MotorFluxMaxim(s, inici));
+            //Consultes concurrents del mateix origen comparteixen el graf residual
+            synchronized (motor) {
+                motor.actualitzar();
+                motor.calcular(algorisme);
+                return new ResultatFluxMaxim(motor);
+            }
+        }
+        catch (NoSuchElementException e) {
+            System.out.println("\nError a les dades --> " + e.getMessage());
         }
         return null;
     }
 
-    /** @brief Dona un posible cami (conjunt canonades) per arribar a terminal
-	@pre  terminal pertany a cami 
-	@post Retorna una llista de canonades que formen un camí fins a terminal
+    /** @brief Calcula el flux màxim de la instantània s a partir del node d'origen amb l'algorisme algorisme
+	@pre   nodeOrigen pertany a la instantània s 
+	@post Retorna el flux màxim de la component de s que conté nodeOrigen, null si nodeOrigen no pertany a s
     */
-    private static List<Canonada> construirCami(Map<Node, Canonada> cami, Node terminal) {
+    //Excepcions: NoSuchElementException si nodeOrigen no pertany a la instantània
+    public static ResultatFluxMaxim fluxMaxim(InstantaniaXarxa s, Origen nodeOrigen, AlgorismeFluxMaxim algorisme) {
+        try {
+            int inici = s.index(nodeOrigen);
+            if (inici < 0) throw new NoSuchElementException("El node no pertany a la xarxa");
 
-        List<Canonada> resultat = new ArrayList<>();
-        Node actual = terminal;
-        while (cami.containsKey(actual)) {
-            Canonada canonada = cami.get(actual);
-            resultat.add(canonada);
-            actual = canonada.node1();
+            MotorFluxMaxim motor = new MotorFluxMaxim(s, inici);
+            motor.calcular(algorisme);
+            return new ResultatFluxMaxim(motor);
+        }
+        catch (NoSuchElementException e) {
+            System.out.println("\nError a les dades --> " + e.getMessage());
         }
-        Collections.reverse(resultat);
-        return resultat;
+        return null;
     }
 
-    /** @brief Afegeix una canonada residual entre u i v al graf
-	@pre  u i v pertanyen a graf 
-	@post Afegeix una canonada residual entre u i v al graf
+    /** @brief Dibuixa la xarxa residual d'un flux màxim
+	@pre   resultat no és null
+	@post Construeix la xarxa residual amb què s'ha calculat resultat i la dibuixa
     */
-    private static void afegirCanonadaResidual(Map<Node, List<Canonada>> graf, Node u, Node v, float capacitat) {
-
-        List<Canonada> llistaCanonadesU = graf.computeIfAbsent(u, k -> new ArrayList<>());
-        boolean trobat = false;
-        for (Canonada canonada : llistaCanonadesU) {
-            if (canonada.node2().equals(v)) {
-                canonada.incrementarCapacitat(capacitat);
-                trobat = true;
-                break;
-            }
-        }
-        if (!trobat) {
-            llistaCanonadesU.add(new Canonada(u, v, capacitat));
-        }
-
-        List<Canonada> llistaCanonadesV = graf.computeIfAbsent(v, k -> new ArrayList<>());
-        trobat = false;
-        for (Canonada canonada : llistaCanonadesV) {
-            if (canonada.node2().equals(u)) {
-                trobat = true;
-                break;
-            }
-        }
-        if (!trobat) {
-            llistaCanonadesV.add(new Canonada(v, u, 0));
-        }
+    public static void dibuixarFluxMaxim(ResultatFluxMaxim resultat) {
+        construirXarxaResidual(grafResidual(resultat));
     }
 
-    /** @brief Redueix la capacitat de la canonada entre u i v
-	@pre  u i v pertanyen a graf 
-	@post Redueix la capacitat (capacitat =capacitat-reduccio) de la canonada entre u i v al graf
+    /** @brief Converteix el graf residual d'un flux màxim en un graf residual de Canonada
+	@pre   resultat no és null
+	@post Retorna, per cada node amb alguna aresta, les canonades residuals que en surten en l'ordre del graf residual
     */
-    private static void canonadaReduirCapacitat(Map<Node, List<Canonada>> graf, Node u, Node v, float reduccio) {
+    private static Map<Node, List<Canonada>> grafResidual(ResultatFluxMaxim resultat) {
+        MotorFluxMaxim motor = resultat.motor();
+        InstantaniaXarxa s = motor.instantania();
+        Node[] nodes = new Node[motor.nombreNodes()];
+        for (int i = 0; i < s.nombreNodes(); i++) nodes[i] = s.node(i);
+        nodes[motor.font()] = new Origen("superOrigen", new Coordenades("0:0:0N,0:0:0E"));
+        nodes[motor.pou()] = new Terminal("superTerminal", new Coordenades("0:0:10N,0:0:10E"), Float.MAX_VALUE);
 
-        for (Canonada canonada : graf.getOrDefault(u, new ArrayList<>())) {
-            if (canonada.node2().equals(v)) {
-                canonada.reduirCapacitat(reduccio);
-                break;
-            }
-        }
-
-        for (Canonada canonada : graf.getOrDefault(v, new ArrayList<>())) {
-            if (canonada.node2().equals(u)) {
-                canonada.incrementarCapacitat(reduccio);
-                break;
-            }
-        }
+        Map<Node, List<Canonada>> grafResidual = new HashMap<>();
+        for (int u = 0; u < motor.nombreNodes(); u++) {
+            if (motor.iniciArestes(u) == motor.fiArestes(u)) continue;
+            List<Canonada> canonades = new ArrayList<>();
+            for (int i = motor.iniciArestes(u); i < motor.fiArestes(u); i++) {
+                int e = motor.aresta(i);
+                Canonada c = new Canonada(nodes[u], nodes[motor.desti(e)], motor.capacitatInicial(e));
+                c.incrementarCapacitat(resultat.residual(e) - motor.capacitatInicial(e));
+                canonades.add(c);
+            }
+            grafResidual.put(nodes[u], canonades);
+        }
+        return grafResidual;
     }
 
     /** @brief Construeix una xarxa residual i la dibuixa
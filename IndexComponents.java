@@ -0,0 +1,122 @@
+/** @file IndexComponents.java
+    @brief Classe IndexComponents
+*/
+
+/** @class IndexComponents
+    @brief Origens i terminals de cada component d'una instantània, per consultar-los sense recórrer la xarxa
+    @author Roger Costa
+*/
+
+import java.util.*;
+
+public class IndexComponents {
+    //Descripció general: Es construeix una sola vegada per instantània. Els terminals de cada component connexa
+    //                    queden seguits, en ordre d'índex, a les posicions [iniciTerminals(c), fiTerminals(c)).
+    //                    Per als origens connectats a un origen (el criteri de Xarxa.origensXarxa: el recorregut no
+    //                    passa a través de cap altre origen) es fa un union-find a part que només uneix les canonades
+    //                    entre nodes que no són origens: cada conjunt és una regió, i de cada regió es guarden els
+    //                    origens amb alguna canonada que hi entra. Els origens connectats a o són o, els origens amb
+    //                    una canonada cap a o i els que alimenten les regions veïnes de o.
+
+    private final InstantaniaXarxa s;       ///< Instantània
+    private final int[] terminals;          ///< Índexs dels terminals, agrupats per component
+    private final int[] iniciTerminals;     ///< Inici dels terminals de cada component (mida nombreComponents()+1)
+    private final int[] regio;              ///< Regió de cada node que no és un origen
+    private final int[] iniciAlimentadors;  ///< Inici dels origens que alimenten cada regió (mida n+1)
+    private final int[] alimentadors;       ///< Origens amb una canonada cap a cada regió, agrupats per regió
+
+    /** @brief Construeix l'índex de la instantània s
+	@pre  s no és null
+	@post S'han agrupat els terminals per component i els nodes que no són origens per regions
+    */
+    public IndexComponents(InstantaniaXarxa s){
+        this.s = s;
+        int n = s.nombreNodes();
+
+        //Terminals: els índexs de cada component són contigus, i per tant en ordre d'índex ja queden agrupats
+        iniciTerminals = new int[s.nombreComponents()+1];
+        for (int i = 0; i < n; i++) {
+            if (s.tipus(i) == InstantaniaXarxa.TERMINAL) iniciTerminals[s.component(i)+1]++;
+        }
+        for (int c = 0; c < s.nombreComponents(); c++) iniciTerminals[c+1] += iniciTerminals[c];
+        terminals = new int[iniciTerminals[s.nombreComponents()]];
+        int t = 0;
+        for (int i = 0; i < n; i++) {
+            if (s.tipus(i) == InstantaniaXarxa.TERMINAL) terminals[t++] = i;
+        }
+
+        //Regions: conjunts de nodes units per canonades que no toquen cap origen
+        ConjuntsDisjunts conjunts = new ConjuntsDisjunts();
+        for (int i = 0; i < n; i++) conjunts.afegir();
+        for (int k = 0; k < s.nombreCanonades(); k++) {
+            int u = s.origen(k), v = s.desti(k);
+            if (s.tipus(u) != InstantaniaXarxa.ORIGEN && s.tipus(v) != InstantaniaXarxa.ORIGEN) conjunts.unir(u, v);
+        }
+        regio = new int[n];
+        for (int i = 0; i < n; i++) regio[i] = conjunts.trobar(i);
+
+        //Origens que alimenten cada regió
+        iniciAlimentadors = new int[n+1];
+        for (int k = 0; k < s.nombreCanonades(); k++) {
+            if (s.tipus(s.origen(k)) == InstantaniaXarxa.ORIGEN && s.tipus(s.desti(k)) != InstantaniaXarxa.ORIGEN) {
+                iniciAlimentadors[regio[s.desti(k)]+1]++;
+            }
+        }
+        for (int r = 0; r < n; r++) iniciAlimentadors[r+1] += iniciAlimentadors[r];
+        alimentadors = new int[iniciAlimentadors[n]];
+        int[] seguent = Arrays.copyOf(iniciAlimentadors, n);
+        for (int k = 0; k < s.nombreCanonades(); k++) {
+            if (s.tipus(s.origen(k)) == InstantaniaXarxa.ORIGEN && s.tipus(s.desti(k)) != InstantaniaXarxa.ORIGEN) {
+                alimentadors[seguent[regio[s.desti(k)]]++] = s.origen(k);
+            }
+        }
+    }
+
+    /** @brief Retorna la posició del primer terminal de la component c
+	@pre  0 <= c < s.nombreComponents()
+	@post Retorna la primera posició de terminal(p) que correspon a la component c
+    */
+    public int iniciTerminals(int c){
+        return iniciTerminals[c];
+    }
+
+    /** @brief Retorna la posició següent a l'últim terminal de la component c
+	@pre  0 <= c < s.nombreComponents()
+	@post Retorna la posició següent a l'última de terminal(p) que correspon a la component c
+    */
+    public int fiTerminals(int c){
+        return iniciTerminals[c+1];
+    }
+
+    /** @brief Retorna el terminal de la posició p
+	@pre  0 <= p < nombre de terminals de la instantània
+	@post Retorna l'índex del terminal de la posició p
+    */
+    public int terminal(int p){
+        return terminals[p];
+    }
+
+    /** @brief Retorna els origens connectats a l'origen o
+	@pre  o és l'índex d'un origen de s
+	@post Retorna, sense repeticions i començant per o, els índexs dels origens connectats a o amb el criteri de
+	      Xarxa.origensXarxa
+    */
+    public List<Integer> origens(int o){
+        Set<Integer> res = new LinkedHashSet<>();
+        Set<Integer> regions = new HashSet<>();
+        res.add(o);
+        for (int j = s.iniciEntrades(o); j < s.fiEntrades(o); j++) {
+            int node = s.origenEntrada(j);
+            if (s.tipus(node) == InstantaniaXarxa.ORIGEN) res.add(node);
+            else regions.add(regio[node]);
+        }
+        for (int k = s.iniciSortides(o); k < s.fiSortides(o); k++) {
+            int node = s.desti(k);
+            if (s.tipus(node) != InstantaniaXarxa.ORIGEN) regions.add(regio[node]);
+        }
+        for (int r : regions) {
+            for (int p = iniciAlimentadors[r]; p < iniciAlimentadors[r+1]; p++) res.add(alimentadors[p]);
+        }
+        return new ArrayList<>(res);
+    }
+}
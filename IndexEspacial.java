@@ -0,0 +1,228 @@
+/** @file IndexEspacial.java
+    @brief Classe IndexEspacial
+*/
+
+/** @class IndexEspacial
+    @brief Arbre k-d sobre les coordenades d'un conjunt de nodes
+    @author Roger Costa
+*/
+
+import java.util.*;
+
+public class IndexEspacial {
+    //Descripció general: Arbre k-d implícit: els nodes es guarden en un vector de manera que el node del mig de cada
+    //                    interval [ini, fi) és l'arrel del subarbre, i les meitats esquerra i dreta en són els fills.
+    //                    Els nivells alternen latitud i longitud. Per cada subarbre es guarda el rectangle que
+    //                    contenen les seves coordenades, que dona una cota inferior de la distància d'haversine
+    //                    (Coordenades.distancia) des de qualsevol punt; les consultes descarten els subarbres amb una
+    //                    cota més gran que la distància buscada. Els resultats per distància estan ordenats per
+    //                    distància i, en cas d'empat, per identificador, igual que GestorXarxes.proximitat.
+
+    private static final double RADI_TERRA = 6371.1; ///< Radi de la Terra en km, el mateix que fa servir Coordenades
+
+    private final Node[] nodes;       ///< Nodes en l'ordre de l'arbre
+    private final float[] latMin;     ///< Latitud mínima del subarbre que té l'arrel a cada posició
+    private final float[] latMax;     ///< Latitud màxima del subarbre que té l'arrel a cada posició
+    private final float[] lonMin;     ///< Longitud mínima del subarbre que té l'arrel a cada posició
+    private final float[] lonMax;     ///< Longitud màxima del subarbre que té l'arrel a cada posició
+    private final double[] cosMin;    ///< Cosinus de latitud mínim del subarbre que té l'arrel a cada posició
+
+    /** @brief Crea l'índex dels nodes de cjtNodes
+	@pre  Cap node de cjtNodes no és null
+	@post S'ha creat l'índex espacial dels nodes de cjtNodes
+    */
+    public IndexEspacial(Collection<? extends Node> cjtNodes){
+        nodes = cjtNodes.toArray(new Node[0]);
+        latMin = new float[nodes.length];
+        latMax = new float[nodes.length];
+        lonMin = new float[nodes.length];
+        lonMax = new float[nodes.length];
+        cosMin = new double[nodes.length];
+        construir(0, nodes.length, 0);
+    }
+
+    /** @brief Retorna el nombre de nodes de l'índex
+	@pre  ---
+	@post Retorna el nombre de nodes indexats
+    */
+    public int mida(){
+        return nodes.length;
+    }
+
+    /** @brief Retorna els k nodes més propers a c
+	@pre  k >= 0
+	@post Retorna els min(k, mida()) nodes més propers a c, ordenats per distància i, en cas d'empat, per identificador
+    */
+    public List<Node> mesPropers(Coordenades c, int k){
+        if (k <= 0 || nodes.length == 0) return new ArrayList<>();
+        //Cua amb el pitjor candidat al cap
+        PriorityQueue<Candidat> millors = new PriorityQueue<>(Collections.reverseOrder());
+        mesPropers(c, k, 0, nodes.length, millors);
+        List<Candidat> ordenats = new ArrayList<>(millors);
+        Collections.sort(ordenats);
+        List<Node> res = new ArrayList<>(ordenats.size());
+        for (Candidat cand : ordenats) res.add(cand.node);
+        return res;
+    }
+
+    /** @brief Retorna els nodes que són a distància radi o menys de c
+	@pre  radi >= 0
+	@post Retorna els nodes que són a radi km o menys de c, ordenats per distància i, en cas d'empat, per identificador
+    */
+    public List<Node> dinsRadi(Coordenades c, double radi){
+        List<Candidat> trobats = new ArrayList<>();
+        dinsRadi(c, radi, 0, nodes.length, trobats);
+        Collections.sort(trobats);
+        List<Node> res = new ArrayList<>(trobats.size());
+        for (Candidat cand : trobats) res.add(cand.node);
+        return res;
+    }
+
+    /** @brief Retorna els nodes del rectangle que tenen c1 i c2 com a cantonades oposades
+	@pre  ---
+	@post Retorna els nodes amb la latitud entre les de c1 i c2 i la longitud entre les de c1 i c2 (extrems inclosos),
+	      ordenats per identificador
+    */
+    public List<Node> dinsRectangle(Coordenades c1, Coordenades c2){
+        float la0 = Math.min(c1.latitud, c2.latitud), la1 = Math.max(c1.latitud, c2.latitud);
+        float lo0 = Math.min(c1.longitud, c2.longitud), lo1 = Math.max(c1.longitud, c2.longitud);
+        List<Node> res = new ArrayList<>();
+        dinsRectangle(la0, la1, lo0, lo1, 0, nodes.length, res);
+        res.sort(Comparator.comparing(Node::id));
+        return res;
+    }
+
+    /** @brief Construeix el subarbre de l'interval [ini, fi)
+	@pre  0 <= ini <= fi <= mida()
+	@post Els nodes de [ini, fi) formen un arbre k-d que comença pel nivell nivell, amb els rectangles calculats
+    */
+    private void construir(int ini, int fi, int nivell){
+        if (ini >= fi) return;
+        Comparator<Node> eix = nivell % 2 == 0
+                ? Comparator.comparingDouble(n -> n.coordenades().latitud)
+                : Comparator.comparingDouble(n -> n.coordenades().longitud);
+        Arrays.sort(nodes, ini, fi, eix);
+        int mig = (ini + fi) >>> 1;
+        construir(ini, mig, nivell + 1);
+        construir(mig + 1, fi, nivell + 1);
+
+        Coordenades c = nodes[mig].coordenades();
+        latMin[mig] = latMax[mig] = c.latitud;
+        lonMin[mig] = lonMax[mig] = c.longitud;
+        cosMin[mig] = c.cosLatitud();
+        for (int fill : new int[]{(ini + mig) >>> 1, (mig + 1 + fi) >>> 1}) {
+            if ((fill < mig && ini < mig) || (fill > mig && mig + 1 < fi)) {
+                latMin[mig] = Math.min(latMin[mig], latMin[fill]);
+                latMax[mig] = Math.max(latMax[mig], latMax[fill]);
+                lonMin[mig] = Math.min(lonMin[mig], lonMin[fill]);
+                lonMax[mig] = Math.max(lonMax[mig], lonMax[fill]);
+                cosMin[mig] = Math.min(cosMin[mig], cosMin[fill]);
+            }
+        }
+    }
+
+    /** @brief Cerca dels k més propers dins el subarbre [ini, fi)
+	@pre  millors conté com a molt k candidats, amb el pitjor al cap
+	@post millors conté els k millors candidats entre els que tenia i els nodes de [ini, fi)
+    */
+    private void mesPropers(Coordenades c, int k, int ini, int fi, PriorityQueue<Candidat> millors){
+        if (ini >= fi) return;
+        int mig = (ini + fi) >>> 1;
+        if (millors.size() == k && cotaInferior(c, mig) > millors.peek().distancia) return;
+
+        Candidat cand = new Candidat(nodes[mig], c);
+        if (millors.size() < k) millors.add(cand);
+        else if (cand.compareTo(millors.peek()) < 0) {
+            millors.poll();
+            millors.add(cand);
+        }
+
+        //Primer el fill amb la cota més petita, perquè l'altre es pugui descartar abans
+        int esq = (ini + mig) >>> 1, dre = (mig + 1 + fi) >>> 1;
+        double cotaEsq = ini < mig ? cotaInferior(c, esq) : Double.MAX_VALUE;
+        double cotaDre = mig + 1 < fi ? cotaInferior(c, dre) : Double.MAX_VALUE;
+        if (cotaEsq <= cotaDre) {
+            mesPropers(c, k, ini, mig, millors);
+            mesPropers(c, k, mig + 1, fi, millors);
+        } else {
+            mesPropers(c, k, mig + 1, fi, millors);
+            mesPropers(c, k, ini, mig, millors);
+        }
+    }
+
+    /** @brief Cerca per radi dins el subarbre [ini, fi)
+	@pre  ---
+	@post S'han afegit a trobats els nodes de [ini, fi) que són a radi km o menys de c
+    */
+    private void dinsRadi(Coordenades c, double radi, int ini, int fi, List<Candidat> trobats){
+        if (ini >= fi) return;
+        int mig = (ini + fi) >>> 1;
+        if (cotaInferior(c, mig) > radi) return;
+        Candidat cand = new Candidat(nodes[mig], c);
+        if (cand.distancia <= radi) trobats.add(cand);
+        dinsRadi(c, radi, ini, mig, trobats);
+        dinsRadi(c, radi, mig + 1, fi, trobats);
+    }
+
+    /** @brief Cerca per rectangle dins el subarbre [ini, fi)
+	@pre  la0 <= la1 i lo0 <= lo1
+	@post S'han afegit a res els nodes de [ini, fi) dins el rectangle [la0, la1] x [lo0, lo1]
+    */
+    private void dinsRectangle(float la0, float la1, float lo0, float lo1, int ini, int fi, List<Node> res){
+        if (ini >= fi) return;
+        int mig = (ini + fi) >>> 1;
+        if (latMax[mig] < la0 || latMin[mig] > la1 || lonMax[mig] < lo0 || lonMin[mig] > lo1) return;
+        Coordenades c = nodes[mig].coordenades();
+        if (c.latitud >= la0 && c.latitud <= la1 && c.longitud >= lo0 && c.longitud <= lo1) res.add(nodes[mig]);
+        dinsRectangle(la0, la1, lo0, lo1, ini, mig, res);
+        dinsRectangle(la0, la1, lo0, lo1, mig + 1, fi, res);
+    }
+
+    /** @brief Cota inferior de la distància de c a qualsevol node del subarbre amb arrel a la posició p
+	@pre  0 <= p < mida()
+	@post Retorna un valor en km que no és més gran que la distància de c a cap node del subarbre
+    */
+    private double cotaInferior(Coordenades c, int p){
+        //Cada terme de la fórmula d'haversine es minimitza per separat dins el rectangle
+        double dLat = 0;
+        if (c.latitud < latMin[p]) dLat = Math.toRadians((double) latMin[p] - c.latitud);
+        else if (c.latitud > latMax[p]) dLat = Math.toRadians((double) c.latitud - latMax[p]);
+        double dLon = 0;
+        if (c.longitud < lonMin[p]) dLon = (double) lonMin[p] - c.longitud;
+        else if (c.longitud > lonMax[p]) dLon = (double) c.longitud - lonMax[p];
+        dLon = Math.toRadians(Math.min(dLon, 360 - dLon));
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                 + Math.max(0, c.cosLatitud()) * Math.max(0, cosMin[p]) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        double b = 2 * Math.asin(Math.sqrt(Math.min(1, a)));
+        //Coordenades resta les coordenades en float: el marge cobreix aquest arrodoniment
+        return RADI_TERRA * b * (1 - 1e-6) - 1e-9;
+    }
+
+    /** @class Candidat
+        @brief Node amb la seva distància al punt de la consulta
+    */
+    private static class Candidat implements Comparable<Candidat> {
+        final Node node;          ///< Node
+        final double distancia;   ///< Distància del node al punt de la consulta
+
+        /** @brief Crea el candidat node amb la seva distància a c
+	    @pre  ---
+	    @post S'ha creat el candidat
+        */
+        Candidat(Node node, Coordenades c){
+            this.node = node;
+            this.distancia = node.coordenades().distancia(c);
+        }
+
+        /** @brief Ordre per distància i, en cas d'empat, per identificador
+	    @pre  ---
+	    @post Retorna un valor negatiu, zero o positiu si this va abans, igual o després que altre
+        */
+        @Override
+        public int compareTo(Candidat altre){
+            int cmp = Double.compare(distancia, altre.distancia);
+            if (cmp != 0) return cmp;
+            return node.id().compareTo(altre.node.id());
+        }
+    }
+}
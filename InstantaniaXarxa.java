@@ -0,0 +1,447 @@
+/** @file InstantaniaXarxa.java
+    @brief Classe InstantaniaXarxa
+*/
+
+/** @class InstantaniaXarxa
+    @brief Topologia d'una Xarxa congelada en vectors indexats per enter (format CSR)
+    @author Roger Costa
+*/
+
+import java.util.*;
+
+public class InstantaniaXarxa implements EstatXarxa {
+    //Descripció general: Còpia de la topologia d'una xarxa. Només hi pot canviar la capacitat de les canonades, que
+    //                    Xarxa.establirCapacitat actualitza al mateix lloc; la resta és de només lectura. Els nodes
+    //                    es numeren de 0 a n-1 en ordre BFS des dels origens (sense tenir en compte el sentit de les canonades), de manera
+    //                    que cada component connexa ocupa un interval contigu d'índexs (i de posicions a
+    //                    ordreTopologic()). Les canonades que surten del node i són les posicions
+    //                    [iniciSortides[i], iniciSortides[i+1]) dels vectors desti, capacitat
+    //                    i canonada; les que hi entren són les posicions [iniciEntrades[i], iniciEntrades[i+1]) dels
+    //                    vectors origenEntrada i canonadaEntrada. L'ordre de les canonades de cada node és el mateix
+    //                    que el dels iteradors Xarxa.sortides i Xarxa.entrades. Com a EstatXarxa, dona l'estat
+    //                    actual dels nodes (aixetes, demandes i cabals) i les capacitats de les canonades.
+
+    public static final byte ORIGEN = 0;   ///< Tipus de node origen
+    public static final byte CONNEXIO = 1; ///< Tipus de node connexio
+    public static final byte TERMINAL = 2; ///< Tipus de node terminal
+
+    private final Node[] nodes;               ///< Node de cada índex
+    private final byte[] tipus;               ///< Tipus de cada node (ORIGEN, CONNEXIO o TERMINAL)
+    private final Map<Node,Integer> index;    ///< Índex de cada node
+    private final int[] iniciSortides;        ///< Inici de les canonades que surten de cada node (mida n+1)
+    private final int[] origen;               ///< Índex del node d'inici de cada canonada
+    private final int[] desti;                ///< Índex del node de fi de cada canonada
+    private final float[] capacitat;          ///< Capacitat de cada canonada (l'única dada que pot canviar, amb Xarxa.establirCapacitat)
+    private final Canonada[] canonades;       ///< Canonada original de cada posició
+    private final Map<Canonada,Integer> posicio; ///< Posició de cada canonada
+    private final int[] iniciEntrades;        ///< Inici de les canonades que entren a cada node (mida n+1)
+    private final int[] origenEntrada;        ///< Índex del node d'inici de cada canonada d'entrada
+    private final int[] canonadaEntrada;      ///< Posició a desti/capacitat/canonades de cada canonada d'entrada
+    private final int[] iniciComponent;       ///< Primer índex de cada component connexa (mida nombreComponents()+1)
+    private final int[] component;            ///< Component connexa de cada node
+    private volatile int[] ordre;             ///< Ordre topològic dels nodes, null si encara no s'ha calculat
+    private int[] posicioOrdre;               ///< Posició de cada node a ordre
+    private volatile EstructuraXarxa estructura; ///< Components fortament connexes, null si encara no s'han calculat
+    private volatile IndexComponents indexComponents; ///< Origens i terminals de cada component, null si encara no s'han calculat
+
+    /** @brief Congela la topologia formada per nodes, entrada i sortida
+	@pre  nodes conté tots els nodes que apareixen a entrada i sortida, en ordre d'alta a la xarxa
+	@post S'ha creat la instantània de la topologia, amb els nodes renumerats en ordre BFS des dels origens
+    */
+    InstantaniaXarxa(Collection<Node> nodes, Map<Node,Set<Canonada>> entrada, Map<Node,Set<Canonada>> sortida){
+        int n = nodes.size();
+        this.nodes = new Node[n];
+        this.tipus = new byte[n];
+        this.index = new HashMap<>(n*2);
+
+        //Renumeració BFS des de cada origen, i després des dels nodes que no s'han assolit; cada BFS recorre una
+        //component connexa sencera
+        int ultim = 0;
+        int[] inicis = new int[n+1];
+        int components = 0;
+        for (int passada = 0; passada < 2; passada++) {
+            for (Node inici : nodes) {
+                if ((passada == 0 && !(inici instanceof Origen)) || index.containsKey(inici)) continue;
+
+                inicis[components++] = ultim;
+                int cap = ultim;
+                numerar(inici, ultim++);
+                while (cap < ultim) {
+                    Node actual = this.nodes[cap++];
+                    Set<Canonada> s = sortida.get(actual);
+                    if (s != null) {
+                        for (Canonada c : s) {
+                            if (!index.containsKey(c.node2())) numerar(c.node2(), ultim++);
+                        }
+                    }
+                    Set<Canonada> e = entrada.get(actual);
+                    if (e != null) {
+                        for (Canonada c : e) {
+                            if (!index.containsKey(c.node1())) numerar(c.node1(), ultim++);
+                        }
+                    }
+                }
+            }
+        }
+
+        inicis[components] = n;
+        iniciComponent = Arrays.copyOf(inicis, components+1);
+        component = new int[n];
+        for (int c = 0; c < components; c++) {
+            for (int i = iniciComponent[c]; i < iniciComponent[c+1]; i++) component[i] = c;
+        }
+
+        //Canonades que surten de cada node
+        iniciSortides = new int[n+1];
+        for (int i = 0; i < n; i++) {
+            Set<Canonada> s = sortida.get(this.nodes[i]);
+            iniciSortides[i+1] = iniciSortides[i] + (s == null ? 0 : s.size());
+        }
+        int m = iniciSortides[n];
+        origen = new int[m];
+        desti = new int[m];
+        capacitat = new float[m];
+        canonades = new Canonada[m];
+        posicio = new HashMap<>(m*2);
+        for (int i = 0; i < n; i++) {
+            Set<Canonada> s = sortida.get(this.nodes[i]);
+            if (s == null) continue;
+            int k = iniciSortides[i];
+            for (Canonada c : s) {
+                origen[k] = i;
+                desti[k] = index.get(c.node2());
+                capacitat[k] = c.capacitat();
+                canonades[k] = c;
+                posicio.put(c, k);
+                k++;
+            }
+        }
+
+        //Canonades que entren a cada node
+        iniciEntrades = new int[n+1];
+        for (int i = 0; i < n; i++) {
+            Set<Canonada> e = entrada.get(this.nodes[i]);
+            iniciEntrades[i+1] = iniciEntrades[i] + (e == null ? 0 : e.size());
+        }
+        origenEntrada = new int[iniciEntrades[n]];
+        canonadaEntrada = new int[iniciEntrades[n]];
+        for (int i = 0; i < n; i++) {
+            Set<Canonada> e = entrada.get(this.nodes[i]);
+            if (e == null) continue;
+            int k = iniciEntrades[i];
+            for (Canonada c : e) {
+                origenEntrada[k] = index.get(c.node1());
+                canonadaEntrada[k] = posicio.get(c);
+                k++;
+            }
+        }
+    }
+
+    /** @brief Assigna l'índex i al node
+	@pre  node no té índex
+	@post node té índex i
+    */
+    private void numerar(Node node, int i){
+        nodes[i] = node;
+        index.put(node, i);
+        if (node instanceof Origen) tipus[i] = ORIGEN;
+        else if (node instanceof Terminal) tipus[i] = TERMINAL;
+        else tipus[i] = CONNEXIO;
+    }
+
+    /** @brief Retorna el nombre de nodes
+	@pre  ---
+	@post Retorna el nombre de nodes de la instantània
+    */
+    public int nombreNodes(){
+        return nodes.length;
+    }
+
+    /** @brief Retorna el nombre de canonades
+	@pre  ---
+	@post Retorna el nombre de canonades de la instantània
+    */
+    public int nombreCanonades(){
+        return desti.length;
+    }
+
+    /** @brief Retorna el node d'índex i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna el node d'índex i
+    */
+    public Node node(int i){
+        return nodes[i];
+    }
+
+    /** @brief Retorna el tipus del node d'índex i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna ORIGEN, CONNEXIO o TERMINAL
+    */
+    public byte tipus(int i){
+        return tipus[i];
+    }
+
+    /** @brief Retorna l'índex de node
+	@pre  ---
+	@post Retorna l'índex de node a la instantània, -1 si no hi pertany
+    */
+    public int index(Node node){
+        Integer i = index.get(node);
+        if (i == null) return -1;
+        return i;
+    }
+
+    /** @brief Retorna el nombre de components connexes
+	@pre  ---
+	@post Retorna el nombre de components connexes (sense tenir en compte el sentit de les canonades) de la instantània
+    */
+    public int nombreComponents(){
+        return iniciComponent.length - 1;
+    }
+
+    /** @brief Primer node de la component c
+	@pre  0 <= c < nombreComponents()
+	@post Retorna el primer índex de la component c; si la component té algun origen, és un origen
+    */
+    public int iniciComponent(int c){
+        return iniciComponent[c];
+    }
+
+    /** @brief Fi dels nodes de la component c
+	@pre  0 <= c < nombreComponents()
+	@post Retorna l'índex següent a l'últim node de la component c
+    */
+    public int fiComponent(int c){
+        return iniciComponent[c+1];
+    }
+
+    /** @brief Component connexa del node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna la component connexa a la qual pertany el node i
+    */
+    public int component(int i){
+        return component[i];
+    }
+
+    /** @brief Primera canonada que surt del node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna la posició de la primera canonada que surt del node i
+    */
+    public int iniciSortides(int i){
+        return iniciSortides[i];
+    }
+
+    /** @brief Fi de les canonades que surten del node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna la posició següent a l'última canonada que surt del node i
+    */
+    public int fiSortides(int i){
+        return iniciSortides[i+1];
+    }
+
+    /** @brief Node d'inici de la canonada k
+	@pre  0 <= k < nombreCanonades()
+	@post Retorna l'índex del node d'inici de la canonada k
+    */
+    public int origen(int k){
+        return origen[k];
+    }
+
+    /** @brief Node de fi de la canonada k
+	@pre  0 <= k < nombreCanonades()
+	@post Retorna l'índex del node de fi de la canonada k
+    */
+    public int desti(int k){
+        return desti[k];
+    }
+
+    /** @brief Capacitat de la canonada k
+	@pre  0 <= k < nombreCanonades()
+	@post Retorna la capacitat de la canonada k
+    */
+    @Override
+    public float capacitat(int k){
+        return capacitat[k];
+    }
+
+    /** @brief Estat de l'aixeta del node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna true si l'aixeta del node i és oberta
+    */
+    @Override
+    public boolean aixetaOberta(int i){
+        return nodes[i].aixetaOberta();
+    }
+
+    /** @brief Demanda actual del node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna la demanda actual del node i si és un terminal, 0 altrament
+    */
+    @Override
+    public float demandaActual(int i){
+        return tipus[i] == TERMINAL ? ((Terminal) nodes[i]).demandaActual() : 0;
+    }
+
+    /** @brief Cabal del node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna el cabal del node i si és un origen, 0 altrament
+    */
+    @Override
+    public float cabal(int i){
+        return tipus[i] == ORIGEN ? ((Origen) nodes[i]).cabal() : 0;
+    }
+
+    /** @brief Actualitza la capacitat de la canonada k
+	@pre  0 <= k < nombreCanonades()
+	@post capacitat(k) val c
+    */
+    void establirCapacitat(int k, float c){
+        capacitat[k] = c;
+    }
+
+    /** @brief Canonada original de la posició k
+	@pre  0 <= k < nombreCanonades()
+	@post Retorna la canonada de la xarxa corresponent a la posició k
+    */
+    public Canonada canonada(int k){
+        return canonades[k];
+    }
+
+    /** @brief Posició de la canonada c
+	@pre  ---
+	@post Retorna la posició de c a desti, capacitat i canonada, -1 si c no pertany a la instantània
+    */
+    public int posicio(Canonada c){
+        Integer k = posicio.get(c);
+        if (k == null) return -1;
+        return k;
+    }
+
+    /** @brief Primera canonada que entra al node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna la posició de la primera canonada que entra al node i
+    */
+    public int iniciEntrades(int i){
+        return iniciEntrades[i];
+    }
+
+    /** @brief Fi de les canonades que entren al node i
+	@pre  0 <= i < nombreNodes()
+	@post Retorna la posició següent a l'última canonada que entra al node i
+    */
+    public int fiEntrades(int i){
+        return iniciEntrades[i+1];
+    }
+
+    /** @brief Node d'inici de la canonada d'entrada j
+	@pre  0 <= j < nombreCanonades()
+	@post Retorna l'índex del node d'inici de la canonada d'entrada j
+    */
+    public int origenEntrada(int j){
+        return origenEntrada[j];
+    }
+
+    /** @brief Posició de la canonada d'entrada j
+	@pre  0 <= j < nombreCanonades()
+	@post Retorna la posició k (a desti, capacitat i canonada) de la canonada d'entrada j
+    */
+    public int canonadaEntrada(int j){
+        return canonadaEntrada[j];
+    }
+
+    /** @brief Retorna els nodes en ordre topològic
+	@pre  ---
+	@post Retorna els índexs de tots els nodes de manera que l'origen de cada canonada va abans que el seu destí,
+	      excepte les canonades que tanquen un cicle (vegeu endavant); els nodes de la component c ocupen les
+	      posicions [iniciComponent(c), fiComponent(c))
+    */
+    public int[] ordreTopologic(){
+        if (ordre == null) calcularOrdre();
+        return ordre;
+    }
+
+    /** @brief Retorna l'índex de components fortament connexes
+	@pre  ---
+	@post Retorna l'índex que diu si els nodes accessibles des de cada node tenen cicles o formen un arbre; es calcula
+	      com a molt una vegada per instantània
+    */
+    public EstructuraXarxa estructura(){
+        EstructuraXarxa e = estructura;
+        if (e == null) {
+            synchronized (this) {
+                e = estructura;
+                if (e == null) estructura = e = new EstructuraXarxa(this);
+            }
+        }
+        return e;
+    }
+
+    /** @brief Retorna l'índex d'origens i terminals de les components
+	@pre  ---
+	@post Retorna l'índex dels terminals de cada component i dels origens connectats a cada origen; es calcula com a
+	      molt una vegada per instantània
+    */
+    public IndexComponents indexComponents(){
+        IndexComponents e = indexComponents;
+        if (e == null) {
+            synchronized (this) {
+                e = indexComponents;
+                if (e == null) indexComponents = e = new IndexComponents(this);
+            }
+        }
+        return e;
+    }
+
+    /** @brief Diu si la canonada k va endavant en l'ordre topològic
+	@pre  0 <= k < nombreCanonades()
+	@post Retorna false si la canonada k tanca un cicle, és a dir, si el seu destí no va després del seu origen a ordreTopologic()
+    */
+    public boolean endavant(int k){
+        if (ordre == null) calcularOrdre();
+        return posicioOrdre[origen[k]] < posicioOrdre[desti[k]];
+    }
+
+    /** @brief Calcula l'ordre topològic
+	@pre  ---
+	@post ordre conté, per cada component, el postordre invers d'un recorregut en profunditat iteratiu des de cada
+	      node no visitat de la component
+    */
+    private synchronized void calcularOrdre(){
+        if (ordre != null) return;
+        int n = nodes.length;
+        int[] resultat = new int[n];
+        int[] posicions = new int[n];
+        int[] pila = new int[n];
+        int[] seguent = new int[n];
+        boolean[] visitat = new boolean[n];
+        int fi = 0;
+
+        for (int arrel = 0; arrel < n; arrel++) {
+            if (arrel == iniciComponent[component[arrel]]) fi = iniciComponent[component[arrel]+1];
+            if (visitat[arrel]) continue;
+            int cim = 0;
+            pila[cim++] = arrel;
+            visitat[arrel] = true;
+            seguent[arrel] = iniciSortides[arrel];
+            while (cim > 0) {
+                int u = pila[cim-1];
+                if (seguent[u] < iniciSortides[u+1]) {
+                    int w = desti[seguent[u]++];
+                    if (!visitat[w]) {
+                        visitat[w] = true;
+                        seguent[w] = iniciSortides[w];
+                        pila[cim++] = w;
+                    }
+                }
+                else {
+                    cim--;
+                    resultat[--fi] = u;
+                }
+            }
+        }
+        for (int i = 0; i < n; i++) posicions[resultat[i]] = i;
+        //ordre s'assigna l'últim: qui el veu calculat també veu posicioOrdre
+        posicioOrdre = posicions;
+        ordre = resultat;
+    }
+}
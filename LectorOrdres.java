@@ -0,0 +1,81 @@
+/** @file LectorOrdres.java
+    @brief Classe LectorOrdres
+*/
+
+/** @class LectorOrdres
+    @brief Lector per línies del fitxer d'entrada del simulador, amb una línia d'anticipació
+    @author Marcel·lí Corominas
+*/
+
+import java.io.*;
+import java.util.function.Predicate;
+
+public class LectorOrdres implements Closeable {
+    //Descripció general: Llegeix el fitxer d'entrada línia a línia. Pot mirar la línia següent sense consumir-la,
+    //                    de manera que les operacions amb un nombre variable de línies (exces cabal, situacio, ...)
+    //                    saben on acaben sense haver de tornar enrere: el bloc acaba quan la línia següent és el nom
+    //                    d'una operació o s'arriba al final del fitxer.
+
+    private static final int MIDA_BUFFER = 1 << 16; ///< Mida del buffer de lectura
+
+    private final BufferedReader reader;        ///< Fitxer d'entrada
+    private final Predicate<String> esOperacio; ///< Diu si una línia és el nom d'una operació
+    private String seguent;                     ///< Línia llegida per avançat
+    private boolean anticipada;                 ///< Diu si seguent conté la línia següent
+
+    /** @brief Crea un lector del fitxer entrada
+	@pre  esOperacio diu si una línia és el nom d'una operació
+	@post S'ha creat el lector
+    */
+    public LectorOrdres(Reader entrada, Predicate<String> esOperacio){
+        this.reader = new BufferedReader(entrada, MIDA_BUFFER);
+        this.esOperacio = esOperacio;
+        this.anticipada = false;
+    }
+
+    /** @brief Llegeix la línia següent
+	@pre  ---
+	@post Retorna la línia següent i la consumeix, null si s'ha arribat al final del fitxer
+    */
+    public String llegir() throws IOException {
+        if (anticipada) {
+            anticipada = false;
+            String linia = seguent;
+            seguent = null;
+            return linia;
+        }
+        return reader.readLine();
+    }
+
+    /** @brief Mira la línia següent
+	@pre  ---
+	@post Retorna la línia següent sense consumir-la, null si s'ha arribat al final del fitxer
+    */
+    public String mirar() throws IOException {
+        if (!anticipada) {
+            seguent = reader.readLine();
+            anticipada = true;
+        }
+        return seguent;
+    }
+
+    /** @brief Llegeix la línia següent d'un bloc
+	@pre  ---
+	@post Si la línia següent existeix i no és el nom d'una operació, la retorna i la consumeix; si no, retorna null
+	      sense consumir res
+    */
+    public String llegirDelBloc() throws IOException {
+        String linia = mirar();
+        if (linia == null || esOperacio.test(linia)) return null;
+        return llegir();
+    }
+
+    /** @brief Tanca el fitxer d'entrada
+	@pre  ---
+	@post S'ha tancat el fitxer d'entrada
+    */
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
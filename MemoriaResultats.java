@@ -0,0 +1,89 @@
+/** @file MemoriaResultats.java
+    @brief Classe MemoriaResultats
+*/
+
+/** @class MemoriaResultats
+    @brief Resultats calculats sobre una versió concreta d'una xarxa
+    @author Roger Costa
+*/
+
+import java.util.*;
+import java.util.function.Supplier;
+
+public class MemoriaResultats {
+    //Descripció general: Guarda els resultats (taules de demanda, de cabal, ...) calculats per la versió actual d'una
+    //                    xarxa, identificats per una clau. Quan la versió de la xarxa canvia tots els resultats guardats
+    //                    deixen de ser vàlids i es descarten. Compta quantes consultes s'han pogut respondre sense
+    //                    recalcular (encerts) i quantes no (errades). Es pot consultar des de diversos fils alhora.
+
+    private long versio;                  ///< Versió de la xarxa a la qual corresponen els resultats
+    private final Map<Object,Object> valors; ///< Resultat de cada clau per a la versió guardada
+    private long encerts;                 ///< Consultes respostes amb un resultat guardat
+    private long errades;                 ///< Consultes que han hagut de calcular el resultat
+
+    /** @brief Crea una memòria buida
+	@pre  ---
+	@post S'ha creat una memòria sense cap resultat i amb els comptadors a zero
+    */
+    MemoriaResultats(){
+        versio = -1;
+        valors = new HashMap<>();
+        encerts = 0;
+        errades = 0;
+    }
+
+    /** @brief Retorna el resultat de clau per a la versió v, calculant-lo si no està guardat
+	@pre  v és la versió actual de la xarxa i calcul calcula el resultat de clau sobre aquesta versió
+	@post Retorna el resultat de clau per a la versió v; si no hi era, s'ha calculat amb calcul i s'ha guardat
+    */
+    @SuppressWarnings("unchecked")
+    <T> T obtenir(long v, Object clau, Supplier<T> calcul){
+        synchronized (this) {
+            if (v != versio) {
+                valors.clear();
+                versio = v;
+            }
+            Object valor = valors.get(clau);
+            if (valor != null) {
+                encerts++;
+                return (T) valor;
+            }
+            errades++;
+        }
+        //El càlcul es fa fora del bloqueig perquè consultes concurrents de claus diferents no s'esperin; si dues
+        //calculen la mateixa clau alhora, es queda el primer resultat
+        T calculat = calcul.get();
+        synchronized (this) {
+            if (v != versio) return calculat;
+            Object valor = valors.get(clau);
+            if (valor != null) return (T) valor;
+            valors.put(clau, calculat);
+        }
+        return calculat;
+    }
+
+    /** @brief Retorna el nombre d'encerts
+	@pre  ---
+	@post Retorna quantes consultes s'han respost amb un resultat ja calculat
+    */
+    public synchronized long encerts(){
+        return encerts;
+    }
+
+    /** @brief Retorna el nombre d'errades
+	@pre  ---
+	@post Retorna quantes consultes han hagut de calcular el resultat
+    */
+    public synchronized long errades(){
+        return errades;
+    }
+
+    /** @brief Posa els comptadors a zero
+	@pre  ---
+	@post encerts() i errades() valen 0; els resultats guardats es conserven
+    */
+    public synchronized void reiniciarComptadors(){
+        encerts = 0;
+        errades = 0;
+    }
+}
@@ -0,0 +1,184 @@
+/** @file MotorCabal.java
+    @brief Classe MotorCabal
+*/
+
+/** @class MotorCabal
+    @brief Calcula el cabal de tots els nodes i canonades d'una xarxa en una sola passada
+    @author Roger Costa
+*/
+
+import java.util.function.IntConsumer;
+
+public class MotorCabal {
+    //Descripció general: Parteix del cabal de cada origen i el propaga cap als terminals recorrent els nodes en ordre
+    //                    topològic. Quan es tracta un node ja se sap el cabal de totes les canonades que hi entren, i
+    //                    es reparteix entre les que en surten segons la demanda de cada fill (calculada per MotorDemanda),
+    //                    amb les mateixes regles que feia servir Xarxa.cabal. Les canonades que tanquen un cicle no
+    //                    aporten cabal. Cada component connexa es calcula per separat, en paral·lel (ExecutorComponents).
+
+    private MotorCabal() {}
+
+    /** @brief Calcula el cabal de tots els nodes i canonades de la instantània s
+	@pre  demanda és el resultat de MotorDemanda.calcular(s) per a la configuració actual de la xarxa
+	@post Retorna el cabal teòric de cada node i de cada canonada segons la configuració actual de la xarxa
+    */
+    public static ResultatCabal calcular(InstantaniaXarxa s, float[] demanda){
+        return calcular(s, demanda, s);
+    }
+
+    /** @brief Calcula el cabal de tots els nodes i canonades de la instantània s amb l'estat estat
+	@pre  demanda és el resultat de MotorDemanda.calcular(s, estat)
+	@post Retorna el cabal teòric de cada node i de cada canonada segons estat
+    */
+    public static ResultatCabal calcular(InstantaniaXarxa s, float[] demanda, EstatXarxa estat){
+        return calcular(s, demanda, estat, null);
+    }
+
+    /** @brief Calcula el cabal dels nodes i canonades de les components components de la instantània s amb l'estat estat
+	@pre  demanda és el resultat de MotorDemanda.calcular(s, estat, components), i components no té repetits
+	@post Retorna el cabal teòric de cada node i de cada canonada de les components components segons estat (0 per
+	      als de les altres); si components és null, es calculen totes, en paral·lel
+    */
+    public static ResultatCabal calcular(InstantaniaXarxa s, float[] demanda, EstatXarxa estat, int[] components){
+        int n = s.nombreNodes();
+        int m = s.nombreCanonades();
+        float[] cabalNode = new float[n];
+        float[] cabalCanonada = new float[m];
+        float[] cabalDibuix = new float[m];
+        float[] sumaCapacitats = new float[n];
+        float[] capacitatPare = new float[m];
+        int[] ordre = s.ordreTopologic();
+
+        IntConsumer tasca = c -> {
+            int inici = s.iniciComponent(c);
+            int fi = s.fiComponent(c);
+            MotorDemanda.capacitats(s, estat, inici, fi, sumaCapacitats, capacitatPare);
+            calcular(s, estat, inici, fi, ordre, demanda, sumaCapacitats, capacitatPare, cabalNode, cabalCanonada, cabalDibuix);
+        };
+        if (components == null) ExecutorComponents.executar(s, tasca);
+        else for (int c : components) tasca.accept(c);
+        return new ResultatCabal(s, demanda, cabalNode, cabalCanonada, cabalDibuix);
+    }
+
+    /** @brief Calcula el cabal dels nodes i canonades de la component formada pels nodes [inici, fi)
+	@pre  [inici, fi) és una component de s, i sumaCapacitats i capacitatPare hi estan calculats
+	@post cabalNode, cabalCanonada i cabalDibuix contenen el cabal dels nodes i canonades de la component
+    */
+    private static void calcular(InstantaniaXarxa s, EstatXarxa estat, int inici, int fi, int[] ordre, float[] demanda, float[] sumaCapacitats, float[] capacitatPare,
+                                 float[] cabalNode, float[] cabalCanonada, float[] cabalDibuix){
+        for (int p = inici; p < fi; p++) {
+            int u = ordre[p];
+            boolean oberta = estat.aixetaOberta(u);
+
+            //Suma de les demandes dels fills
+            float sDem = 0;
+            for (int k = s.iniciSortides(u); k < s.fiSortides(u); k++) {
+                sDem = sDem + demanda[s.desti(k)];
+            }
+
+            if (s.tipus(u) == InstantaniaXarxa.ORIGEN) {
+                cabalNode[u] = oberta ? estat.cabal(u) : 0;
+                for (int k = s.iniciSortides(u); k < s.fiSortides(u); k++) {
+                    float c = oberta ? cabalSortidaOrigen(s, estat, k, demanda, sDem, sumaCapacitats, capacitatPare) : 0;
+                    cabalCanonada[k] = demanda[u] == 0 ? 0 : c;
+                    cabalDibuix[k] = demanda[s.desti(k)] == 0 ? 0 : c;
+                }
+            }
+            else {
+                float suma = 0;
+                for (int j = s.iniciEntrades(u); j < s.fiEntrades(u); j++) {
+                    suma = suma + cabalCanonada[s.canonadaEntrada(j)];
+                }
+                cabalNode[u] = demanda[u] == 0 || !oberta ? 0 : suma;
+                for (int k = s.iniciSortides(u); k < s.fiSortides(u); k++) {
+                    cabalCanonada[k] = demanda[u] == 0 ? 0 : cabalSortida(s, estat, k, oberta, demanda, sDem, suma);
+                }
+            }
+        }
+
+        //Cabal que es mostra a les canonades que no surten d'un origen, un cop se sap el cabal de tots els nodes
+        for (int u = inici; u < fi; u++) {
+            if (s.tipus(u) == InstantaniaXarxa.ORIGEN) continue;
+            int sortides = s.fiSortides(u) - s.iniciSortides(u);
+            for (int k = s.iniciSortides(u); k < s.fiSortides(u); k++) {
+                int w = s.desti(k);
+                if (demanda[w] == 0) cabalDibuix[k] = 0;
+                else if (s.fiEntrades(w) - s.iniciEntrades(w) > 1) {
+                    float sumCap = 0;
+                    for (int i = 0; i < sortides; i++) sumCap = sumCap + estat.capacitat(k);
+                    cabalDibuix[k] = cabalNode[u] * ((demanda[u] / sumCap));
+                }
+                else cabalDibuix[k] = cabalNode[w];
+            }
+        }
+    }
+
+    /** @brief Cabal que passa per la canonada k, que surt d'un node que no és origen
+	@pre  suma és el cabal que entra a l'origen de k i sDem la suma de les demandes dels seus fills
+	@post Retorna el cabal que l'origen de k fa arribar al destí de k
+    */
+    private static float cabalSortida(InstantaniaXarxa s, EstatXarxa estat, int k, boolean oberta, float[] demanda, float sDem, float suma){
+        float demandaDesti = demanda[s.desti(k)];
+        float capacitat = estat.capacitat(k);
+        float prov = (demandaDesti / sDem) * suma;
+
+        if (capacitat < prov && oberta) return capacitat;
+        else if (sDem > suma) {
+            if (capacitat < prov && oberta) return capacitat;
+            else if (oberta) return prov;
+        }
+        else if (sDem <= suma && oberta) {
+            //Vol dir que en el node tenim cabal sobrant per tant podem dir que hi ha només el que necessita
+            if (capacitat >= demandaDesti) return demandaDesti;
+            else return capacitat;
+        }
+        return 0;
+    }
+
+    /** @brief Cabal que passa per la canonada k, que surt de l'origen o
+	@pre  l'origen de k té l'aixeta oberta i sDem és la suma de les demandes dels seus fills
+	@post Retorna el cabal que l'origen de k fa arribar al destí de k
+    */
+    private static float cabalSortidaOrigen(InstantaniaXarxa s, EstatXarxa estat, int k, float[] demanda, float sDem, float[] sumaCapacitats, float[] capacitatPare){
+        int u = s.origen(k);
+        float cabal = estat.cabal(u);
+        int w = s.desti(k);
+        int sortides = s.fiSortides(u) - s.iniciSortides(u);
+        float demandaOrigen = demanda[u];
+        float capacitat = estat.capacitat(k);
+        float prov = (demanda[w] / sDem) * cabal;
+
+        if (cabal >= sDem) {
+            if (demandaOrigen > cabal && cabal <= capacitat && sortides == 1)
+                return cabal;
+            else if (demandaOrigen > cabal && cabal <= capacitat && sortides > 1)
+                return distribuirPerSobre(s, estat, w, 0, capacitatPare[k], sumaCapacitats[w]);
+            else if (demandaOrigen > cabal && prov > capacitat)
+                return capacitat;
+            else if (demandaOrigen <= cabal && sortides == 1)
+                return demandaOrigen;
+            else if (demandaOrigen <= cabal && sortides > 1) {
+                if (s.tipus(w) == InstantaniaXarxa.TERMINAL) return distribuirPerSobre(s, estat, w, 0, capacitatPare[k], sumaCapacitats[w]);
+                else return distribuirPerSobre(s, estat, w, demanda[w], capacitatPare[k], sumaCapacitats[w]);
+            }
+            else if (demandaOrigen > cabal && demandaOrigen > capacitat)
+                return capacitat;
+            return 0;
+        }
+        if (capacitat < prov) return capacitat;
+        else return prov;
+    }
+
+    /** @brief Part de suma que correspon a la canonada de capacitat capacitatCan que entra a w
+	@pre  sumCap és la suma de les capacitats de les canonades que entren a w
+	@post Reparteix suma (o la demanda actual de w, si és terminal) proporcionalment a la capacitat i la limita a capacitatCan
+    */
+    private static float distribuirPerSobre(InstantaniaXarxa s, EstatXarxa estat, int w, float suma, float capacitatCan, float sumCap){
+        float prov;
+        if (s.tipus(w) == InstantaniaXarxa.TERMINAL) prov = suma + (capacitatCan/sumCap) * estat.demandaActual(w);
+        else prov = ((capacitatCan/sumCap)*suma);
+
+        if (capacitatCan >= prov) return prov;
+        else return capacitatCan;
+    }
+}
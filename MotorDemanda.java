@@ -0,0 +1,135 @@
+/** @file MotorDemanda.java
+    @brief Classe MotorDemanda
+*/
+
+/** @class MotorDemanda
+    @brief Calcula la demanda teòrica de tots els nodes d'una xarxa en una sola passada
+    @author Roger Costa
+*/
+
+import java.util.function.IntConsumer;
+
+public class MotorDemanda {
+    //Descripció general: Recorre els nodes en ordre topològic invers (dels terminals cap als origens) i calcula la
+    //                    demanda de cada node a partir de la dels seus fills, amb les mateixes regles que Xarxa.demanda:
+    //                    una aixeta tancada anul·la la demanda del node, un node amb més d'una canonada d'entrada reparteix
+    //                    la seva demanda entre els pares proporcionalment a la capacitat, i cap canonada no en pot portar
+    //                    més que la seva capacitat. Les canonades que tanquen un cicle no aporten demanda. Cada
+    //                    component connexa es calcula per separat, en paral·lel (ExecutorComponents).
+
+    private MotorDemanda() {}
+
+    /** @brief Calcula la demanda teòrica de tots els nodes de la instantània s
+	@pre  s no és null
+	@post Retorna un vector indexat pels índexs de s amb la demanda teòrica de cada node segons la configuració actual de la xarxa
+    */
+    public static float[] calcular(InstantaniaXarxa s){
+        return calcular(s, s);
+    }
+
+    /** @brief Calcula la demanda teòrica de tots els nodes de la instantània s amb l'estat estat
+	@pre  s i estat no són null, i estat està indexat per s
+	@post Retorna un vector indexat pels índexs de s amb la demanda teòrica de cada node segons estat
+    */
+    public static float[] calcular(InstantaniaXarxa s, EstatXarxa estat){
+        return calcular(s, estat, null);
+    }
+
+    /** @brief Calcula la demanda teòrica dels nodes de les components components de la instantània s amb l'estat estat
+	@pre  s i estat no són null, estat està indexat per s, i components no té repetits
+	@post Retorna un vector indexat pels índexs de s amb la demanda teòrica de cada node de les components components
+	      segons estat (0 per als nodes de les altres); si components és null, es calculen totes, en paral·lel
+    */
+    public static float[] calcular(InstantaniaXarxa s, EstatXarxa estat, int[] components){
+        int n = s.nombreNodes();
+        float[] suma = new float[n];        //Demanda per sota de cada node, abans d'aplicar la seva aixeta
+        float[] demanda = new float[n];
+        float[] sumaCapacitats = new float[n];
+        float[] capacitatPare = new float[s.nombreCanonades()];
+        int[] ordre = s.ordreTopologic();
+
+        IntConsumer tasca = c -> {
+            capacitats(s, estat, s.iniciComponent(c), s.fiComponent(c), sumaCapacitats, capacitatPare);
+            calcular(s, estat, s.iniciComponent(c), s.fiComponent(c), ordre, suma, demanda, sumaCapacitats, capacitatPare);
+        };
+        if (components == null) ExecutorComponents.executar(s, tasca);
+        else for (int c : components) tasca.accept(c);
+        return demanda;
+    }
+
+    /** @brief Calcula la demanda teòrica dels nodes de les posicions [inici, fi) de l'ordre topològic
+	@pre  [inici, fi) és una component de s, i sumaCapacitats i capacitatPare hi estan calculats
+	@post demanda conté la demanda teòrica de cada node de la component
+    */
+    private static void calcular(InstantaniaXarxa s, EstatXarxa estat, int inici, int fi, int[] ordre, float[] suma, float[] demanda, float[] sumaCapacitats, float[] capacitatPare){
+        for (int p = fi - 1; p >= inici; p--) {
+            int v = ordre[p];
+
+            if (s.tipus(v) == InstantaniaXarxa.TERMINAL) {
+                suma[v] = estat.demandaActual(v);
+            }
+            else {
+                float sv = 0;
+                for (int k = s.iniciSortides(v); k < s.fiSortides(v); k++) {
+                    if (s.endavant(k)) sv = sv + aportacio(s, estat, k, suma, sumaCapacitats, capacitatPare);
+                }
+                suma[v] = sv;
+            }
+            demanda[v] = estat.aixetaOberta(v) ? suma[v] : 0;
+        }
+    }
+
+    /** @brief Demanda que el destí de la canonada k demana al seu origen a través de k
+	@pre  suma conté la demanda per sota del destí de k
+	@post Retorna la demanda que arriba a l'origen de k a través de k
+    */
+    private static float aportacio(InstantaniaXarxa s, EstatXarxa estat, int k, float[] suma, float[] sumaCapacitats, float[] capacitatPare){
+        int w = s.desti(k);
+        if (!estat.aixetaOberta(w)) return 0;
+
+        int entrades = s.fiEntrades(w) - s.iniciEntrades(w);
+        if (s.tipus(w) == InstantaniaXarxa.TERMINAL) {
+            float demandaActual = suma[w];
+            if (entrades == 1) {
+                if (estat.capacitat(k) < demandaActual) return estat.capacitat(k);
+                else return demandaActual;
+            }
+            return limitar(capacitatPare[k], (capacitatPare[k]/sumaCapacitats[w])* demandaActual);
+        }
+        if (entrades > 1) {
+            return limitar(capacitatPare[k], (capacitatPare[k]/sumaCapacitats[w])*suma[w]);
+        }
+        return suma[w];
+    }
+
+    /** @brief Limita la part de demanda prov a la capacitat de la canonada
+	@pre  ---
+	@post Retorna prov si hi cap a la canonada de capacitat capacitatCan, capacitatCan altrament
+    */
+    private static float limitar(float capacitatCan, float prov){
+        if (capacitatCan >= prov) return prov;
+        else return capacitatCan;
+    }
+
+    /** @brief Capacitats amb què es reparteix la demanda dels nodes [inici, fi) entre els seus pares
+	@pre  [inici, fi) és un interval de components de s, i estat està indexat per s
+	@post sumaCapacitats conté, per cada node de l'interval, la suma de les capacitats de les canonades que hi entren
+          (en l'ordre de Xarxa.entrades), i capacitatPare, per cada canonada k que hi entra, la capacitat de l'última
+          canonada que entra al destí de k des de l'origen de k (si dos nodes estan units per més d'una canonada,
+          totes reparteixen amb la capacitat de l'última)
+    */
+    static void capacitats(InstantaniaXarxa s, EstatXarxa estat, int inici, int fi, float[] sumaCapacitats, float[] capacitatPare){
+        int[] ultima = new int[fi - inici];
+        for (int w = inici; w < fi; w++) {
+            float sumCap = 0;
+            for (int j = s.iniciEntrades(w); j < s.fiEntrades(w); j++) {
+                sumCap = sumCap + estat.capacitat(s.canonadaEntrada(j));
+                ultima[s.origenEntrada(j) - inici] = s.canonadaEntrada(j);
+            }
+            sumaCapacitats[w] = sumCap;
+            for (int j = s.iniciEntrades(w); j < s.fiEntrades(w); j++) {
+                capacitatPare[s.canonadaEntrada(j)] = estat.capacitat(ultima[s.origenEntrada(j) - inici]);
+            }
+        }
+    }
+}
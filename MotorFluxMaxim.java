@@ -0,0 +1,528 @@
+/** @file MotorFluxMaxim.java
+    @brief Classe MotorFluxMaxim
+*/
+
+/** @class MotorFluxMaxim
+    @brief Graf residual en vectors sobre el qual es calcula el flux màxim d'una component d'una xarxa
+    @author Marcel·lí Corominas
+*/
+
+import java.util.*;
+
+public class MotorFluxMaxim {
+    //Descripció general: Graf residual de la component d'una instantània que conté un origen, amb un superorigen
+    //                    unit a totes les sortides dels origens de la component i un superterminal al qual arriben
+    //                    totes les canonades que acaben en un terminal (el mateix graf que construïa
+    //                    GestorXarxes.construirGrafResidual). Els nodes de la instantània conserven el seu índex; si
+    //                    la instantània té k nodes, el superorigen és l'índex k i el superterminal l'índex k+1. Cada parell de nodes connectats té
+    //                    una única aresta en cada sentit: l'aresta e i la seva inversa e^1 es creen juntes, de manera
+    //                    que la inversa es troba sense recórrer cap llista. Una canonada amb alguna aixeta tancada
+    //                    en un extrem no té capacitat. El flux s'acumula entre crides, i els algorismes continuen a
+    //                    partir del flux que ja hi ha; actualitzar() adapta el flux a canvis d'aixetes o de capacitats
+    //                    sense tornar a començar.
+
+    private final InstantaniaXarxa s;  ///< Instantània de la qual s'ha construït el graf
+    private final int n;               ///< Nombre de nodes del graf (nodes de la instantània més superorigen i superterminal)
+    private final int font;            ///< Índex del superorigen
+    private final int pou;             ///< Índex del superterminal
+    private int m;                     ///< Nombre d'arestes (sempre parell)
+    private int[] desti;               ///< Node de fi de cada aresta
+    private float[] residual;          ///< Capacitat residual de cada aresta
+    private float[] capacitat;         ///< Capacitat de cada aresta (suma de les canonades que representa)
+    private float[] capacitatInicial;  ///< Capacitat de la primera canonada amb què es va crear cada aresta
+    private int[] inici;               ///< Inici de les arestes de cada node a arestes (mida n+1)
+    private int[] arestes;             ///< Arestes que surten de cada node, en ordre de creació
+    private final int[] arestaCanonada; ///< Aresta que representa cada canonada de la instantània, -1 si no en té
+    private final float[] capacitatCanonada; ///< Capacitat amb què cada canonada contribueix a la seva aresta
+
+    /** @brief Construeix el graf residual de la component de s que conté l'origen d'índex origen
+	@pre  origen és l'índex d'un origen de s
+	@post S'ha construït el graf residual sense cap flux
+    */
+    public MotorFluxMaxim(InstantaniaXarxa s, int origen){
+        this.s = s;
+        this.n = s.nombreNodes() + 2;
+        this.font = n - 2;
+        this.pou = n - 1;
+        this.desti = new int[16];
+        this.residual = new float[16];
+        this.capacitat = new float[16];
+        this.capacitatInicial = new float[16];
+        this.m = 0;
+        this.arestaCanonada = new int[s.nombreCanonades()];
+        this.capacitatCanonada = new float[s.nombreCanonades()];
+        Arrays.fill(arestaCanonada, -1);
+
+        //Mateix recorregut que GestorXarxes.construirGrafResidual
+        Map<Long,Integer> parells = new HashMap<>();
+        Queue<Integer> cua = new ArrayDeque<>();
+        boolean[] enCua = new boolean[s.nombreNodes()];
+        boolean[] visitats = new boolean[s.nombreNodes()];
+        for (int o : GestorXarxes.origens(s, origen)) {
+            for (int k = s.iniciSortides(o); k < s.fiSortides(o); k++) {
+                int d = s.desti(k);
+                capacitatCanonada[k] = capacitatEfectiva(k);
+                arestaCanonada[k] = afegirAresta(parells, font, d, capacitatCanonada[k]);
+                if (!enCua[d]) {
+                    cua.add(d);
+                    enCua[d] = true;
+                }
+            }
+        }
+        while (!cua.isEmpty()) {
+            int actual = cua.poll();
+            enCua[actual] = false;
+            for (int k = s.iniciSortides(actual); k < s.fiSortides(actual); k++) {
+                visitats[actual] = true;
+                int d = s.desti(k);
+                if (!visitats[d]) {
+                    if (!enCua[d]) {
+                        cua.add(d);
+                        enCua[d] = true;
+                    }
+                    capacitatCanonada[k] = capacitatEfectiva(k);
+                    if (s.tipus(d) == InstantaniaXarxa.TERMINAL) arestaCanonada[k] = afegirAresta(parells, actual, pou, capacitatCanonada[k]);
+                    else arestaCanonada[k] = afegirAresta(parells, actual, d, capacitatCanonada[k]);
+                }
+            }
+        }
+
+        //Arestes de cada node en ordre de creació
+        inici = new int[n+1];
+        for (int e = 0; e < m; e++) inici[desti[e^1]+1]++;
+        for (int i = 0; i < n; i++) inici[i+1] += inici[i];
+        arestes = new int[m];
+        int[] pos = Arrays.copyOf(inici, n);
+        for (int e = 0; e < m; e++) arestes[pos[desti[e^1]]++] = e;
+    }
+
+    /** @brief Capacitat que aporta la canonada k segons l'estat actual de la xarxa
+	@pre  0 <= k < s.nombreCanonades()
+	@post Retorna la capacitat de la canonada k, o 0 si algun dels seus extrems té l'aixeta tancada
+    */
+    private float capacitatEfectiva(int k){
+        Canonada c = s.canonada(k);
+        if (!c.node1().aixetaOberta() || !c.node2().aixetaOberta()) return 0;
+        return c.capacitatTemporal();
+    }
+
+    /** @brief Adapta el graf residual a l'estat actual de les aixetes i de les capacitats de la xarxa
+	@pre  La topologia de la xarxa no ha canviat des que es va crear la instantània
+	@post Les arestes tenen la capacitat que correspon a l'estat actual; on el flux n'excedia la nova capacitat,
+          l'excés s'ha retornat al superorigen i s'ha deixat de demanar al superterminal, de manera que el graf conté
+          un flux vàlid (no necessàriament màxim). Retorna true si ha canviat alguna capacitat
+    */
+    public boolean actualitzar(){
+        boolean canviat = false;
+        for (int k = 0; k < arestaCanonada.length; k++) {
+            int e = arestaCanonada[k];
+            if (e < 0) continue;
+            float nova = capacitatEfectiva(k);
+            if (nova == capacitatCanonada[k]) continue;
+            canviat = true;
+            float diferencia = nova - capacitatCanonada[k];
+            capacitatCanonada[k] = nova;
+            capacitat[e] += diferencia;
+            residual[e] += diferencia;
+            if (residual[e] < 0) cancelar(e, -residual[e]);
+        }
+        return canviat;
+    }
+
+    /** @brief Treu quantitat de flux de l'aresta e
+	@pre  El flux per e excedeix en quantitat la seva capacitat (residual(e) == -quantitat)
+	@post e està saturada; el flux que arribava a l'origen de e per sortir per e torna al superorigen, i el que
+          sortia del destí de e es deixa d'enviar al superterminal
+    */
+    private void cancelar(int e, float quantitat){
+        residual[e] = 0;
+        residual[e^1] -= quantitat;
+        int u = desti[e^1];
+        int v = desti[e];
+        if (u != font) enviar(u, font, quantitat);
+        if (v != pou) enviar(pou, v, quantitat);
+    }
+
+    /** @brief Envia quantitat de flux de a b pel graf residual
+	@pre  Hi ha prou capacitat residual de a a b
+	@post S'ha augmentat el flux en quantitat (o el màxim possible) per camins més curts de a a b
+    */
+    private void enviar(int a, int b, float quantitat){
+        int[] arribada = new int[n];
+        int[] cua = new int[n];
+        while (quantitat > 0) {
+            Arrays.fill(arribada, -1);
+            int cap = 0, fi = 0;
+            cua[fi++] = a;
+            while (cap < fi && arribada[b] < 0) {
+                int u = cua[cap++];
+                for (int i = inici[u]; i < inici[u+1]; i++) {
+                    int e = arestes[i];
+                    int v = desti[e];
+                    if (v != a && arribada[v] < 0 && residual[e] > 0) {
+                        arribada[v] = e;
+                        cua[fi++] = v;
+                    }
+                }
+            }
+            if (arribada[b] < 0) return;
+
+            float f = quantitat;
+            for (int v = b; v != a; v = desti[arribada[v]^1]) f = Math.min(f, residual[arribada[v]]);
+            for (int v = b; v != a; v = desti[arribada[v]^1]) {
+                residual[arribada[v]] -= f;
+                residual[arribada[v]^1] += f;
+            }
+            quantitat -= f;
+        }
+    }
+
+    /** @brief Afegeix capacitat c a l'aresta u->v, creant-la juntament amb la seva inversa si no existeix
+	@pre  ---
+	@post L'aresta u->v té c més de capacitat i residual, existeix l'aresta v->u, i es retorna l'aresta u->v
+    */
+    private int afegirAresta(Map<Long,Integer> parells, int u, int v, float c){
+        Integer e = parells.get((long) u * n + v);
+        if (e != null) {
+            capacitat[e] += c;
+            residual[e] += c;
+            return e;
+        }
+        if (m + 2 > desti.length) {
+            int mida = desti.length * 2;
+            desti = Arrays.copyOf(desti, mida);
+            residual = Arrays.copyOf(residual, mida);
+            capacitat = Arrays.copyOf(capacitat, mida);
+            capacitatInicial = Arrays.copyOf(capacitatInicial, mida);
+        }
+        desti[m] = v;
+        residual[m] = capacitat[m] = capacitatInicial[m] = c;
+        desti[m+1] = u;
+        parells.put((long) u * n + v, m);
+        parells.put((long) v * n + u, m+1);
+        m += 2;
+        return m - 2;
+    }
+
+    /** @brief Calcula el flux màxim amb l'algorisme a
+	@pre  ---
+	@post El graf residual conté un flux màxim, i es retorna el seu valor
+    */
+    public float calcular(AlgorismeFluxMaxim a){
+        if (a == AlgorismeFluxMaxim.EDMONDS_KARP) return edmondsKarp();
+        if (a == AlgorismeFluxMaxim.PUSH_RELABEL) return pushRelabel();
+        return dinic();
+    }
+
+    /** @brief Augmenta el flux pel camí més curt del graf residual mentre n'hi hagi
+	@pre  ---
+	@post El graf residual conté un flux màxim, i es retorna el seu valor
+    */
+    public float edmondsKarp(){
+        enviar(font, pou, Float.MAX_VALUE);
+        return flux();
+    }
+
+    /** @brief Augmenta el flux amb l'algorisme de Dinic
+	@pre  ---
+	@post El graf residual conté un flux màxim, i es retorna el seu valor
+    */
+    public float dinic(){
+        int[] nivell = new int[n];
+        int[] actual = new int[n];
+        int[] cami = new int[n];
+        int[] cua = new int[n];
+
+        while (nivells(nivell, cua)) {
+            System.arraycopy(inici, 0, actual, 0, n);
+            int llarg = 0;
+            int u = font;
+            while (true) {
+                if (u == pou) {
+                    //Coll d'ampolla del camí i retrocés fins a la primera aresta saturada
+                    float f = Float.MAX_VALUE;
+                    for (int i = 0; i < llarg; i++) f = Math.min(f, residual[cami[i]]);
+                    int saturada = -1;
+                    for (int i = 0; i < llarg; i++) {
+                        int e = cami[i];
+                        residual[e] -= f;
+                        residual[e^1] += f;
+                        if (saturada < 0 && residual[e] <= 0) saturada = i;
+                    }
+                    llarg = saturada < 0 ? 0 : saturada;
+                    u = llarg == 0 ? font : desti[cami[llarg-1]];
+                    continue;
+                }
+                boolean avancat = false;
+                for (; actual[u] < inici[u+1]; actual[u]++) {
+                    int e = arestes[actual[u]];
+                    int v = desti[e];
+                    if (residual[e] > 0 && nivell[v] == nivell[u] + 1) {
+                        cami[llarg++] = e;
+                        u = v;
+                        avancat = true;
+                        break;
+                    }
+                }
+                if (avancat) continue;
+                //u no arriba al superterminal dins d'aquest nivell
+                nivell[u] = -1;
+                if (llarg == 0) break;
+                u = desti[cami[--llarg]^1];
+                actual[u]++;
+            }
+        }
+        return flux();
+    }
+
+    /** @brief Calcula el nivell (distància des del superorigen pel graf residual) de cada node
+	@pre  nivell i cua tenen mida n
+	@post Retorna true si el superterminal és accessible des del superorigen
+    */
+    private boolean nivells(int[] nivell, int[] cua){
+        Arrays.fill(nivell, -1);
+        int cap = 0, fi = 0;
+        nivell[font] = 0;
+        cua[fi++] = font;
+        while (cap < fi) {
+            int u = cua[cap++];
+            for (int i = inici[u]; i < inici[u+1]; i++) {
+                int e = arestes[i];
+                int v = desti[e];
+                if (residual[e] > 0 && nivell[v] < 0) {
+                    nivell[v] = nivell[u] + 1;
+                    cua[fi++] = v;
+                }
+            }
+        }
+        return nivell[pou] >= 0;
+    }
+
+    /** @brief Augmenta el flux amb l'algorisme push-relabel, tractant sempre el node actiu d'etiqueta més alta
+	@pre  ---
+	@post El graf residual conté un flux màxim, i es retorna el seu valor
+    */
+    public float pushRelabel(){
+        int[] altura = new int[n];
+        float[] exces = new float[n];
+        int[] actual = new int[n];
+        int[] primerActiu = new int[2*n];   //Llista de nodes actius de cada altura
+        int[] seguentActiu = new int[n];
+        int[] perAltura = new int[2*n];     //Nombre de nodes de cada altura, per detectar forats
+        Arrays.fill(primerActiu, -1);
+
+        altura[font] = n;
+        for (int v = 0; v < n; v++) if (v != font) perAltura[0]++;
+        perAltura[n]++;
+        System.arraycopy(inici, 0, actual, 0, n);
+
+        //Preflux: se saturen les arestes que surten del superorigen
+        int maxima = -1;
+        for (int i = inici[font]; i < inici[font+1]; i++) {
+            int e = arestes[i];
+            float f = residual[e];
+            if (f <= 0) continue;
+            int v = desti[e];
+            residual[e] = 0;
+            residual[e^1] += f;
+            if (v != pou && v != font && exces[v] == 0) {
+                seguentActiu[v] = primerActiu[0];
+                primerActiu[0] = v;
+                maxima = 0;
+            }
+            exces[v] += f;
+        }
+
+        while (maxima >= 0) {
+            int u = primerActiu[maxima];
+            if (u < 0) {
+                maxima--;
+                continue;
+            }
+            primerActiu[maxima] = seguentActiu[u];
+
+            //Descàrrega de u
+            while (exces[u] > 0) {
+                if (actual[u] == inici[u+1]) {
+                    //Reetiquetatge
+                    int antiga = altura[u];
+                    int nova = 2*n - 1;
+                    for (int i = inici[u]; i < inici[u+1]; i++) {
+                        int e = arestes[i];
+                        if (residual[e] > 0) nova = Math.min(nova, altura[desti[e]] + 1);
+                    }
+                    perAltura[antiga]--;
+                    if (perAltura[antiga] == 0 && antiga < n) {
+                        //Forat: cap node per sobre d'antiga (i per sota de n) pot arribar al superterminal
+                        for (int v = 0; v < n; v++) {
+                            if (v != font && altura[v] > antiga && altura[v] < n) {
+                                perAltura[altura[v]]--;
+                                altura[v] = n + 1;
+                                perAltura[n+1]++;
+                                actual[v] = inici[v];
+                            }
+                        }
+                        nova = Math.max(nova, n + 1);
+                    }
+                    altura[u] = nova;
+                    perAltura[nova]++;
+                    actual[u] = inici[u];
+                    if (nova >= 2*n - 1) break;
+                    continue;
+                }
+                int e = arestes[actual[u]];
+                int v = desti[e];
+                if (residual[e] > 0 && altura[u] == altura[v] + 1) {
+                    float f = Math.min(exces[u], residual[e]);
+                    residual[e] -= f;
+                    residual[e^1] += f;
+                    if (v != font && v != pou && exces[v] == 0) {
+                        seguentActiu[v] = primerActiu[altura[v]];
+                        primerActiu[altura[v]] = v;
+                    }
+                    exces[u] -= f;
+                    exces[v] += f;
+                }
+                else actual[u]++;
+            }
+            //Els nodes desplaçats per un forat poden haver quedat a les llistes d'altures antigues
+            if (exces[u] > 0 && altura[u] < 2*n - 1) {
+                seguentActiu[u] = primerActiu[altura[u]];
+                primerActiu[altura[u]] = u;
+            }
+            maxima = Math.max(maxima, altura[u]);
+        }
+        return flux();
+    }
+
+    /** @brief Retorna el flux que arriba al superterminal
+	@pre  ---
+	@post Retorna el valor del flux que conté el graf residual
+    */
+    public float flux(){
+        //La capacitat residual de les arestes inverses que surten del superterminal és el flux que hi arriba
+        float f = 0;
+        for (int i = inici[pou]; i < inici[pou+1]; i++) f += residual[arestes[i]];
+        return f;
+    }
+
+    /** @brief Retorna la instantània de la qual s'ha construït el graf
+	@pre  ---
+	@post Retorna la instantània de la qual s'ha construït el graf
+    */
+    public InstantaniaXarxa instantania(){
+        return s;
+    }
+
+    /** @brief Retorna el nombre de nodes del graf
+	@pre  ---
+	@post Retorna el nombre de nodes de la instantània més 2
+    */
+    public int nombreNodes(){
+        return n;
+    }
+
+    /** @brief Retorna l'índex del superorigen
+	@pre  ---
+	@post Retorna l'índex del superorigen
+    */
+    public int font(){
+        return font;
+    }
+
+    /** @brief Retorna l'índex del superterminal
+	@pre  ---
+	@post Retorna l'índex del superterminal
+    */
+    public int pou(){
+        return pou;
+    }
+
+    /** @brief Retorna el nombre d'arestes del graf
+	@pre  ---
+	@post Retorna el nombre d'arestes, incloses les inverses
+    */
+    public int nombreArestes(){
+        return m;
+    }
+
+    /** @brief Primera aresta que surt del node u
+	@pre  0 <= u < nombreNodes()
+	@post Retorna la posició a aresta() de la primera aresta que surt de u
+    */
+    public int iniciArestes(int u){
+        return inici[u];
+    }
+
+    /** @brief Fi de les arestes que surten del node u
+	@pre  0 <= u < nombreNodes()
+	@post Retorna la posició següent a l'última aresta que surt de u
+    */
+    public int fiArestes(int u){
+        return inici[u+1];
+    }
+
+    /** @brief Aresta de la posició i
+	@pre  0 <= i < nombreArestes()
+	@post Retorna l'aresta que ocupa la posició i de les arestes ordenades per node d'inici
+    */
+    public int aresta(int i){
+        return arestes[i];
+    }
+
+    /** @brief Node d'inici de l'aresta e
+	@pre  0 <= e < nombreArestes()
+	@post Retorna el node d'inici de e
+    */
+    public int origen(int e){
+        return desti[e^1];
+    }
+
+    /** @brief Node de fi de l'aresta e
+	@pre  0 <= e < nombreArestes()
+	@post Retorna el node de fi de e
+    */
+    public int desti(int e){
+        return desti[e];
+    }
+
+    /** @brief Capacitat residual de l'aresta e
+	@pre  0 <= e < nombreArestes()
+	@post Retorna la capacitat residual de e
+    */
+    public float residual(int e){
+        return residual[e];
+    }
+
+    /** @brief Capacitat de l'aresta e
+	@pre  0 <= e < nombreArestes()
+	@post Retorna la suma de les capacitats de les canonades que representa e (0 si és només una inversa)
+    */
+    public float capacitat(int e){
+        return capacitat[e];
+    }
+
+    /** @brief Aresta que representa la canonada de posició k de la instantània
+	@pre  0 <= k < instantania().nombreCanonades()
+	@post Retorna l'aresta per on passa el flux de la canonada k, -1 si la canonada no forma part del graf
+    */
+    public int arestaCanonada(int k){
+        return arestaCanonada[k];
+    }
+
+    /** @brief Capacitat amb què la canonada de posició k contribueix a la seva aresta
+	@pre  0 <= k < instantania().nombreCanonades()
+	@post Retorna la capacitat de la canonada k segons l'últim estat de la xarxa vist pel graf (0 si té alguna aixeta tancada)
+    */
+    public float capacitatCanonada(int k){
+        return capacitatCanonada[k];
+    }
+
+    /** @brief Capacitat amb què es va crear l'aresta e
+	@pre  0 <= e < nombreArestes()
+	@post Retorna la capacitat de la primera canonada que va crear e (0 si es va crear com a inversa)
+    */
+    public float capacitatInicial(int e){
+        return capacitatInicial[e];
+    }
+}
@@ -0,0 +1,20 @@
+/** @file ObservadorCabal.java
+    @brief Interfície ObservadorCabal
+*/
+
+/** @class ObservadorCabal
+    @brief Rep els canvis de cabal dels abonats o nodes als quals s'ha subscrit
+    @author Roger Costa
+*/
+
+import java.util.Map;
+
+public interface ObservadorCabal {
+    //Descripció general: Observador dels canvis de cabal d'una Subscripcio a una Xarxa
+
+    /** @brief Es crida després de cada modificació de la xarxa que ha fet canviar algun dels cabals subscrits
+	@pre  canvis no és buit
+	@post canvis conté, per cada abonat (o identificador de node) subscrit que ha canviat, el seu cabal nou
+    */
+    void cabalCanviat(Map<String,Float> canvis);
+}
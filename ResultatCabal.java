@@ -0,0 +1,94 @@
+/** @file ResultatCabal.java
+    @brief Classe ResultatCabal
+*/
+
+/** @class ResultatCabal
+    @brief Demanda i cabal de tots els nodes i canonades d'una xarxa en un moment donat
+    @author Roger Costa
+*/
+
+public class ResultatCabal {
+    //Descripció general: Resultat de MotorDemanda i MotorCabal sobre una instantània de la xarxa
+
+    private final InstantaniaXarxa s;    ///< Instantània sobre la qual s'ha calculat
+    private final float[] demanda;       ///< Demanda teòrica de cada node
+    private final float[] cabalNode;     ///< Cabal teòric de cada node
+    private final float[] cabalCanonada; ///< Cabal que cada canonada fa arribar al seu destí
+    private final float[] cabalDibuix;   ///< Cabal que es mostra a cada canonada quan es dibuixa la xarxa
+
+    /** @brief Crea un resultat amb els vectors calculats sobre s
+	@pre  Els vectors estan indexats pels índexs de s
+	@post S'ha creat el resultat
+    */
+    ResultatCabal(InstantaniaXarxa s, float[] demanda, float[] cabalNode, float[] cabalCanonada, float[] cabalDibuix){
+        this.s = s;
+        this.demanda = demanda;
+        this.cabalNode = cabalNode;
+        this.cabalCanonada = cabalCanonada;
+        this.cabalDibuix = cabalDibuix;
+    }
+
+    /** @brief Retorna la instantània sobre la qual s'ha calculat el resultat
+	@pre  ---
+	@post Retorna la instantània sobre la qual s'ha calculat el resultat
+    */
+    public InstantaniaXarxa instantania(){
+        return s;
+    }
+
+    /** @brief Demanda teòrica del node d'índex i
+	@pre  0 <= i < instantania().nombreNodes()
+	@post Retorna la demanda teòrica del node d'índex i
+    */
+    public float demanda(int i){
+        return demanda[i];
+    }
+
+    /** @brief Cabal teòric del node d'índex i
+	@pre  0 <= i < instantania().nombreNodes()
+	@post Retorna el cabal teòric del node d'índex i
+    */
+    public float cabal(int i){
+        return cabalNode[i];
+    }
+
+    /** @brief Cabal de la canonada de posició k
+	@pre  0 <= k < instantania().nombreCanonades()
+	@post Retorna el cabal que la canonada de posició k fa arribar al seu destí
+    */
+    public float cabalCanonada(int k){
+        return cabalCanonada[k];
+    }
+
+    /** @brief Cabal que es mostra a la canonada de posició k
+	@pre  0 <= k < instantania().nombreCanonades()
+	@post Retorna el cabal que es mostra a la canonada de posició k quan es dibuixa la xarxa
+    */
+    public float cabalDibuix(int k){
+        return cabalDibuix[k];
+    }
+
+    /** @brief Demanda teòrica de node
+	@pre  node pertany a la instantània
+	@post Retorna la demanda teòrica de node
+    */
+    public float demanda(Node node){
+        return demanda[s.index(node)];
+    }
+
+    /** @brief Cabal teòric de node
+	@pre  node pertany a la instantània
+	@post Retorna el cabal teòric de node
+    */
+    public float cabal(Node node){
+        return cabalNode[s.index(node)];
+    }
+
+    /** @brief Cabal de la canonada c
+	@pre  c pertany a la instantània
+	@post Retorna el cabal que c fa arribar al seu destí
+    */
+    public float cabal(Canonada c){
+        return cabalCanonada[s.posicio(c)];
+    }
+}
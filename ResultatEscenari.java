@@ -0,0 +1,70 @@
+/** @file ResultatEscenari.java
+    @brief Classe ResultatEscenari
+*/
+
+/** @class ResultatEscenari
+    @brief Efecte d'un escenari sobre el cabal dels terminals d'una xarxa
+    @author Marcel·lí Corominas
+*/
+
+import java.util.*;
+
+public class ResultatEscenari {
+    //Descripció general: Resultat de GestorXarxes.escenaris per a un escenari: la variació del cabal de cada terminal
+    //                    que canvia respecte de l'estat actual de la xarxa. Els terminals que no hi són no canvien.
+
+    private final Escenari escenari;                ///< Escenari avaluat
+    private final Map<Terminal,Float> variacions;   ///< Cabal amb l'escenari menys cabal actual, dels terminals que canvien
+
+    /** @brief Crea el resultat d'un escenari
+	@pre  variacions només conté variacions diferents de 0
+	@post S'ha creat el resultat de escenari
+    */
+    ResultatEscenari(Escenari escenari, Map<Terminal,Float> variacions){
+        this.escenari = escenari;
+        this.variacions = Collections.unmodifiableMap(variacions);
+    }
+
+    /** @brief Retorna l'escenari
+	@pre  ---
+	@post Retorna l'escenari avaluat
+    */
+    public Escenari escenari(){
+        return escenari;
+    }
+
+    /** @brief Retorna les variacions de cabal
+	@pre  ---
+	@post Retorna, per cada terminal el cabal del qual canvia amb l'escenari, el cabal amb l'escenari menys l'actual
+    */
+    public Map<Terminal,Float> variacions(){
+        return variacions;
+    }
+
+    /** @brief Retorna la variació de cabal d'un terminal
+	@pre  ---
+	@post Retorna el cabal de t amb l'escenari menys l'actual (0 si no canvia o no és de la xarxa)
+    */
+    public float variacio(Terminal t){
+        Float v = variacions.get(t);
+        return v == null ? 0 : v;
+    }
+
+    /** @brief Retorna els terminals afectats
+	@pre  ---
+	@post Retorna els terminals el cabal dels quals canvia amb l'escenari
+    */
+    public Set<Terminal> terminalsAfectats(){
+        return variacions.keySet();
+    }
+
+    /** @brief Diu quants terminals perden cabal
+	@pre  ---
+	@post Retorna el nombre de terminals que reben menys cabal amb l'escenari
+    */
+    public int terminalsPerjudicats(){
+        int n = 0;
+        for (float v : variacions.values()) if (v < 0) n++;
+        return n;
+    }
+}
@@ -0,0 +1,123 @@
+/** @file ResultatFluxMaxim.java
+    @brief Classe ResultatFluxMaxim
+*/
+
+/** @class ResultatFluxMaxim
+    @brief Flux màxim d'una component d'una xarxa: valor, flux de cada canonada i tall mínim
+    @author Marcel·lí Corominas
+*/
+
+import java.util.*;
+
+public class ResultatFluxMaxim {
+    //Descripció general: Resultat de GestorXarxes.fluxMaxim. El flux de cada aresta del graf residual es reparteix
+    //                    entre les canonades que representa omplint-les per ordre fins a la seva capacitat. El tall
+    //                    mínim són les canonades amb capacitat que van d'un node accessible des del superorigen pel graf residual a
+    //                    un de no accessible.
+
+    private final MotorFluxMaxim motor;         ///< Graf residual amb què s'ha calculat el flux màxim
+    private final float[] residual;             ///< Capacitat residual de cada aresta de motor en acabar el càlcul
+    private final float valor;                  ///< Valor del flux màxim
+    private final Map<Canonada,Float> fluxos;   ///< Flux de cada canonada del graf
+    private final Set<Canonada> tall;           ///< Canonades del tall mínim
+
+    /** @brief Crea el resultat a partir del graf residual de motor
+	@pre  motor conté un flux màxim
+	@post S'ha calculat el flux de cada canonada i el tall mínim
+    */
+    ResultatFluxMaxim(MotorFluxMaxim motor){
+        this.motor = motor;
+        this.valor = motor.flux();
+        this.fluxos = new LinkedHashMap<>();
+        this.tall = new LinkedHashSet<>();
+        this.residual = new float[motor.nombreArestes()];
+        for (int e = 0; e < residual.length; e++) residual[e] = motor.residual(e);
+
+        InstantaniaXarxa s = motor.instantania();
+        float[] pendent = new float[motor.nombreArestes()];
+        for (int e = 0; e < motor.nombreArestes(); e++) {
+            pendent[e] = Math.max(0, motor.capacitat(e) - residual[e]);
+        }
+        for (int k = 0; k < s.nombreCanonades(); k++) {
+            int e = motor.arestaCanonada(k);
+            if (e < 0) continue;
+            Canonada c = s.canonada(k);
+            float f = Math.min(pendent[e], motor.capacitatCanonada(k));
+            pendent[e] -= f;
+            fluxos.put(c, f);
+        }
+
+        //Nodes accessibles des del superorigen pel graf residual
+        boolean[] accessible = new boolean[motor.nombreNodes()];
+        int[] cua = new int[motor.nombreNodes()];
+        int cap = 0, fi = 0;
+        cua[fi++] = motor.font();
+        accessible[motor.font()] = true;
+        while (cap < fi) {
+            int u = cua[cap++];
+            for (int i = motor.iniciArestes(u); i < motor.fiArestes(u); i++) {
+                int e = motor.aresta(i);
+                int v = motor.desti(e);
+                if (!accessible[v] && residual[e] > 0) {
+                    accessible[v] = true;
+                    cua[fi++] = v;
+                }
+            }
+        }
+        for (int k = 0; k < s.nombreCanonades(); k++) {
+            int e = motor.arestaCanonada(k);
+            if (e >= 0 && motor.capacitatCanonada(k) > 0 && accessible[motor.origen(e)] && !accessible[motor.desti(e)]) tall.add(s.canonada(k));
+        }
+    }
+
+    /** @brief Retorna el valor del flux màxim
+	@pre  ---
+	@post Retorna el cabal total que pot arribar als terminals de la component
+    */
+    public float valor(){
+        return valor;
+    }
+
+    /** @brief Retorna el flux de la canonada c
+	@pre  ---
+	@post Retorna el flux que passa per c, 0 si c no forma part de la component
+    */
+    public float flux(Canonada c){
+        Float f = fluxos.get(c);
+        if (f == null) return 0;
+        return f;
+    }
+
+    /** @brief Retorna el flux de totes les canonades
+	@pre  ---
+	@post Retorna el flux de cada canonada de la component, en l'ordre de la instantània
+    */
+    public Map<Canonada,Float> fluxos(){
+        return Collections.unmodifiableMap(fluxos);
+    }
+
+    /** @brief Retorna el tall mínim
+	@pre  ---
+	@post Retorna les canonades que formen un tall mínim de la component; la suma de les seves capacitats (0 si tenen alguna aixeta tancada) és valor()
+    */
+    public Set<Canonada> tall(){
+        return Collections.unmodifiableSet(tall);
+    }
+
+    /** @brief Retorna el graf residual
+	@pre  ---
+	@post Retorna el graf residual amb què s'ha calculat el resultat (les seves capacitats residuals poden haver
+          canviat després, si s'ha tornat a fer servir)
+    */
+    MotorFluxMaxim motor(){
+        return motor;
+    }
+
+    /** @brief Capacitat residual de l'aresta e en acabar el càlcul
+	@pre  0 <= e < motor().nombreArestes()
+	@post Retorna la capacitat residual de e quan es va calcular el resultat
+    */
+    float residual(int e){
+        return residual[e];
+    }
+}
@@ -10,49 +10,54 @@
 
 import java.util.*;
 import java.io.*;
+import java.util.regex.Pattern;
 
 public class SimuladorModeText {
 
-    private final Xarxa xarxa = new Xarxa(); /// < Es crea una nova Xarxa d'aigua
+    private final Xarxa xarxa; /// < Xarxa d'aigua sobre la qual es fan les operacions
     private final GestorXarxes gestor = new GestorXarxes(); /// < Es crea una nou Gestor de Xarxes d'aigua
 
-    ArrayList<String> operacions = new ArrayList<>(Arrays.asList("terminal", "origen", "connexio", "connectar", "abonar", "tancar", "obrir", "backtrack", "cabal", "demanda", "cicles", "arbre", "cabal minim", "exces cabal", "situacio", "cabal abonat", "proximitat", "dibuix", "max-flow")); ///< Llista del nom de totes les posibles operacions
-    private final ArrayList<String> historial = new ArrayList<>(); /// < Conte els identificadors dels nodes que han passat d'aixeta oberta a aixeta tancada i viceversa
+    private final Map<String, Comanda> comandes = new HashMap<>(); ///< Tractament de cada operació, pel seu nom
+    private final Map<String, Consulta> consultes = new HashMap<>(); ///< Tractament de cada operació que només consulta la xarxa, pel seu nom
 
+    private static final Pattern CANONADA = Pattern.compile("^[^\\-]+-[^\\-]+$"); ///< Forma de l'identificador d'una canonada
 
-     /** @brief Recula n operacions d'obriment/tancament d'aixetes
-	@pre  n>=0
-	@post Recula n operacions d'obriment/tancament d'aixetes
-    */
-
-     private void recular(int n) {
-         int inici = historial.size() -1;
-         int fin = inici - n ;
-
-         if (fin < 0) {
-             fin = 0;
-         }
-         for (int i = inici; i >= fin; i--) {
-             String[] operacio = historial.get(i).split(" ");
-             String op = operacio[0];
-             String id = operacio[1];
-             Node n1 = xarxa.node(id);
-             if (op.equals("obrir")) {
-                 xarxa.tancarAixeta(n1);
-             } else if (op.equals("tancar")) {
-                 xarxa.obrirAixeta(n1);
-             }
 
-         }
-         for (int i = inici; i >= fin; i--) {
-             if (!historial.isEmpty()) {
-                 historial.remove(i);
-             }
-         }
-     }
+    /** @brief Crea un simulador amb totes les operacions registrades
+	@pre  ---
+	@post S'ha creat un simulador amb una xarxa buida
+    */
+    public SimuladorModeText(){
+        this(new Xarxa());
+    }
 
+    /** @brief Crea un simulador que parteix de la xarxa xarxa, amb totes les operacions registrades
+	@pre  xarxa no és null
+	@post S'ha creat un simulador les operacions del qual modifiquen i consulten xarxa
+    */
+    public SimuladorModeText(Xarxa xarxa){
+        this.xarxa = xarxa;
+        registrarOperacions();
+    }
 
+    /** @brief Registra el tractament de l'operació nom
+	@pre  nom no és null
+	@post Les línies nom del fitxer d'entrada s'executen amb comanda (substituint el tractament anterior, si n'hi havia)
+    */
+    public void registrar(String nom, Comanda comanda){
+        consultes.remove(nom);
+        comandes.put(nom, comanda);
+    }
 
+    /** @brief Registra el tractament de l'operació nom, que només consulta la xarxa
+	@pre  nom no és null; consulta no modifica la xarxa
+	@post Les línies nom del fitxer d'entrada es tracten amb consulta (substituint el tractament anterior, si n'hi
+	      havia), en paral·lel amb les altres consultes que hi hagi fins a la modificació següent
+    */
+    public void registrarConsulta(String nom, Consulta consulta){
+        comandes.remove(nom);
+        consultes.put(nom, consulta);
+    }
 
     /** @brief Ens diu si op fa referencia a una operacio
 	@pre  El fitxer existeix 
@@ -60,15 +65,257 @@ public class SimuladorModeText {
     */
     private boolean esOperacio(String op){
 
-        return operacions.contains(op);
+        return comandes.containsKey(op) || consultes.containsKey(op);
+    }
+
+    /** @brief Registra el tractament de totes les operacions del fitxer d'entrada
+	@pre  ---
+	@post Totes les operacions tenen la seva Comanda o Consulta registrada
+    */
+    private void registrarOperacions(){
+        registrar("terminal", (lector, writer) -> {
+            String nom = lector.llegir();
+            String coor = lector.llegir();
+            try {
+                float demanda = Float.parseFloat(lector.llegir());
+                Coordenades cord = new Coordenades(coor);
+                Terminal term = new Terminal(nom, cord,demanda);
+                xarxa.afegir(term);
+            }
+            catch(Exception e){
+                System.out.println("S'esperava un real.");
+            }
+        });
+        registrar("origen", (lector, writer) -> {
+            String nom = lector.llegir();
+            String coor = lector.llegir();
+            Coordenades cord = new Coordenades(coor);
+            Origen ori = new Origen(nom, cord);
+            xarxa.afegir(ori);
+        });
+        registrar("connexio", (lector, writer) -> {
+            String nom = lector.llegir();
+            String coor = lector.llegir();
+            Coordenades cord = new Coordenades(coor);
+            Connexio con = new Connexio(nom, cord);
+            xarxa.afegir(con);
+        });
+        registrar("connectar", (lector, writer) -> {
+            Node n1 = xarxa.node(lector.llegir());
+            Node n2 = xarxa.node(lector.llegir());
+            float capacitat = Float.parseFloat(lector.llegir());
+            xarxa.connectarAmbCanonada(n1, n2, capacitat);
+        });
+        registrar("abonar", (lector, writer) -> {
+            String dni = lector.llegir();
+            Node n1 = xarxa.node(lector.llegir());
+            Terminal n=(Terminal) n1;
+            xarxa.abonar(dni, n);
+        });
+        registrar("tancar", (lector, writer) -> {
+            Node n1 = xarxa.node(lector.llegir());
+            xarxa.tancarAixeta(n1);
+        });
+        registrar("obrir", (lector, writer) -> {
+            Node n1 = xarxa.node(lector.llegir());
+            xarxa.obrirAixeta(n1);
+        });
+        registrar("backtrack", (lector, writer) -> {
+            int n = Integer.parseInt(lector.llegir());
+            xarxa.desfer(n);
+        });
+        registrar("cabal", (lector, writer) -> {
+            Node n1 = xarxa.node(lector.llegir());
+            float cabal = Float.parseFloat(lector.llegir());
+            Origen o=(Origen) n1;
+            xarxa.establirCabal(o, cabal);
+        });
+        registrar("demanda", (lector, writer) -> {
+            Node n1 = xarxa.node(lector.llegir());
+            float demanda = Float.parseFloat(lector.llegir());
+            Terminal n=(Terminal) n1;
+            xarxa.establirDemanda(n, demanda);
+        });
+        registrar("capacitat", (lector, writer) -> {
+            Canonada can = xarxa.canonada(lector.llegir());
+            float capacitat = Float.parseFloat(lector.llegir());
+            xarxa.establirCapacitat(can, capacitat);
+        });
+        registrarConsulta("cicles", lector -> {
+            String nom=lector.llegir();
+            Node n1 = xarxa.node(nom);
+            Origen o=(Origen) n1;
+            return writer -> {
+                if (gestor.teCicles(xarxa, o)) {
+                    writer.println(nom+" te cicles");
+                } else {
+                    writer.println(nom + " no te cicles");
+                }
+            };
+        });
+        registrarConsulta("arbre", lector -> {
+            String nom= lector.llegir();
+            Node n1 = xarxa.node(nom);
+            Origen o=(Origen) n1;
+            return writer -> {
+                if (gestor.esArbre(xarxa, o)) {
+                    writer.println(n1.id() + " es un arbre");
+                } else {
+                    writer.println(n1.id() + " no es un arbre");
+                }
+            };
+        });
+        registrarConsulta("cabal minim", lector -> {
+            Node n1 = xarxa.node(lector.llegir());
+            Origen o=(Origen) n1;
+            String linia = lector.llegir().replaceAll("[^0-9]", "");
+            float cabal = Float.parseFloat(linia);
+            return writer -> {
+                writer.println("cabal minim");
+                writer.println(gestor.cabalMinim(xarxa, o, cabal));
+            };
+        });
+        registrarConsulta("exces cabal", lector -> {
+            Set<Canonada> canonades = new HashSet<Canonada>();
+            String linia;
+            while ((linia = lector.llegirDelBloc()) != null) {
+                if(CANONADA.matcher(linia).matches()){
+                        Canonada can = xarxa.canonada(linia);
+                        if(can!=null) {
+                            canonades.add(can);
+                        }
+
+                }
+                else{
+                    System.out.println("\nError a les dades --> " + linia + " no és una canonada");
+                }
+            }
+            return writer -> {
+                writer.println("exces cabal");
+                Set<Canonada> resultats = gestor.excesCabal(xarxa,canonades);
+                for (Canonada canonada : resultats) {
+                    writer.println(canonada.node1().id()+"-"+canonada.node2().id());
+                }
+            };
+        });
+        registrarConsulta("exces cabal *", lector -> writer -> {
+            writer.println("exces cabal");
+            Map<Canonada, Float> resultats = GestorXarxes.auditarExcesCabal(xarxa);
+            for (Map.Entry<Canonada, Float> e : resultats.entrySet()) {
+                writer.println(e.getKey().node1().id()+"-"+e.getKey().node2().id()+" "+e.getValue());
+            }
+        });
+        registrarConsulta("situacio", lector -> {
+            Map<Terminal, Boolean> llista = new HashMap<>();
+            String linia;
+            while ((linia = lector.llegirDelBloc()) != null) {
+                String[] parts = linia.split(" ");
+                if (parts.length == 2) {
+                    Terminal terminal = (Terminal) xarxa.node(parts[0]);
+                    Boolean repAigua = parts[1].equals("SI");
+                    llista.put(terminal, repAigua);
+                }
+                else{
+                    System.out.println("\nError a les dades --> " + linia);
+                }
+            }
+            return writer -> {
+                Set<Node> resultats = gestor.aixetesTancar(xarxa, llista);
+                writer.println("tancar");
+                for (Node n : resultats) {
+                    writer.println(n.id());
+                }
+            };
+        });
+        registrarConsulta("cabal abonat", lector -> {
+            String dni=lector.llegir();
+            return writer -> {
+                float cabal=xarxa.cabalAbonat(dni);
+                writer.println("cabal abonat");
+                writer.println(cabal);
+            };
+        });
+        registrarConsulta("cabal abonats", lector -> {
+            List<String> dnis = new ArrayList<>();
+            String linia;
+            while ((linia = lector.llegirDelBloc()) != null) {
+                dnis.add(linia);
+            }
+            return writer -> {
+                Map<String,Float> cabals = xarxa.cabalAbonats(dnis);
+                writer.println("cabal abonats");
+                for (Map.Entry<String,Float> e : cabals.entrySet()) {
+                    writer.println(e.getKey() + " " + e.getValue());
+                }
+            };
+        });
+        registrarConsulta("proximitat", lector -> {
+            Set<Node> aixetes = new HashSet<>();
+            String coor=lector.llegir();
+            Coordenades cord = new Coordenades(coor);
+            String linia;
+            while ((linia = lector.llegirDelBloc()) != null) {
+                Node aix = xarxa.node(linia);
+                aixetes.add(aix);
+            }
+            return writer -> {
+                List<Node> resultats = GestorXarxes.proximitat(cord,aixetes);
+                writer.println("proximitat");
+                for (Node n : resultats) {
+                    writer.println(n.id());
+                }
+            };
+        });
+        registrar("desar", (lector, writer) -> {
+            String fitxer = lector.llegir();
+            try {
+                xarxa.desar(fitxer);
+            }
+            catch (IOException e) {
+                System.out.println("\nError a les dades --> " + e.getMessage());
+            }
+        });
+        registrar("dibuix", (lector, writer) -> {
+            Node n=xarxa.node(lector.llegir());
+            xarxa.dibuixar(n);
+        });
+        registrarConsulta("max-flow", lector -> {
+            Node n=xarxa.node(lector.llegir());
+            Origen o=(Origen) n;
+            AlgorismeFluxMaxim algorisme = AlgorismeFluxMaxim.DINIC;
+            String linia=lector.mirar();
+            if(linia != null && AlgorismeFluxMaxim.perNom(linia) != null){
+                algorisme = AlgorismeFluxMaxim.perNom(lector.llegir());
+            }
+            AlgorismeFluxMaxim escollit = algorisme;
+            return writer -> {
+                ResultatFluxMaxim resultat = GestorXarxes.fluxMaxim(xarxa, o, escollit);
+                if(resultat != null){
+                    writer.println("max-flow");
+                    writer.println(resultat.valor());
+                    writer.println("tall");
+                    for (Canonada canonada : resultat.tall()) {
+                        writer.println(canonada.node1().id()+"-"+canonada.node2().id());
+                    }
+                }
+            };
+        });
     }
 
     /** @brief Processa totes les operacions del fitxer d'entrada
 	@pre  El fitxer existeix 
-	@post Processa totes les operacions del fitxer 
+	@post Processa totes les operacions del fitxer i afegeix els resultats a sortida.txt
     */
     public void simular(String fitxer){
-        File Sortida = new File("sortida.txt");
+        simular(fitxer, "sortida.txt");
+    }
+
+    /** @brief Processa totes les operacions del fitxer d'entrada
+	@pre  El fitxer existeix 
+	@post Processa totes les operacions del fitxer i afegeix els resultats al fitxer sortida
+    */
+    public void simular(String fitxer, String sortida){
+        File Sortida = new File(sortida);
         try {
             if (Sortida.createNewFile()) {
                 System.out.println("Fitxer creat: " + Sortida.getName());
@@ -81,201 +328,31 @@ public class SimuladorModeText {
             return;
         }
 
-        try(BufferedReader reader =new BufferedReader(new FileReader(fitxer));
-            PrintWriter writer = new PrintWriter(new BufferedWriter(new FileWriter(Sortida, true)))){
-                String linia, nom, coor, dni;
-                float demanda, capacitat, cabal;
-                String regex = "^[^\\-]+-[^\\-]+$";
-                while ((linia = reader.readLine()) != null) {
-                    if (linia.equals("terminal")) {
-                        nom = reader.readLine();
-                        coor = reader.readLine();
-                        try {
-                            demanda = Float.parseFloat(reader.readLine());
-                            Coordenades cord = new Coordenades(coor);
-                            Terminal term = new Terminal(nom, cord,demanda);
-                            xarxa.afegir(term);
-                        }
-                        catch(Exception e){
-                            System.out.println("S'esperava un real.");
-                        }
-
-                    } else if (linia.equals("origen")) {
-                        nom = reader.readLine();
-                        coor = reader.readLine();
-                        Coordenades cord = new Coordenades(coor);
-                        Origen ori = new Origen(nom, cord);
-                        xarxa.afegir(ori);
-                    } else if (linia.equals("connexio")) {
-                        nom = reader.readLine();
-                        coor = reader.readLine();
-                        Coordenades cord = new Coordenades(coor);
-                        Connexio con = new Connexio(nom, cord);
-                        xarxa.afegir(con);
-                    } else if (linia.equals("connectar")) {
-                        Node n1 = xarxa.node(reader.readLine());
-                        Node n2 = xarxa.node(reader.readLine());
-                        capacitat = Float.parseFloat(reader.readLine());
-                        xarxa.connectarAmbCanonada(n1, n2, capacitat);
-                    } else if (linia.equals("abonar")) {
-                        dni = reader.readLine();
-                        Node n1 = xarxa.node(reader.readLine());
-                        Terminal n=(Terminal) n1;
-                        xarxa.abonar(dni, n);
-                    } else if (linia.equals("tancar")) {
-                        nom=reader.readLine();
-                        Node n1 = xarxa.node(nom);
-                        if(n1.aixetaOberta()){
-                            historial.add(linia + " " + nom);
+        //Les consultes seguides es calculen en paral·lel; cada modificació espera que acabin les anteriors
+        try(LectorOrdres lector = new LectorOrdres(new FileReader(fitxer), this::esOperacio);
+            PrintWriter writer = new PrintWriter(new EscriptorAsincron(sortida));
+            EpocaConsultes epoca = new EpocaConsultes(Runtime.getRuntime().availableProcessors())){
+                try {
+                    String linia;
+                    while ((linia = lector.llegir()) != null) {
+                        Consulta consulta = consultes.get(linia);
+                        if (consulta != null) {
+                            epoca.afegir(consulta, lector, writer);
+                            continue;
                         }
-                        xarxa.tancarAixeta(n1);
-                    }
-                    else if (linia.equals("obrir")) {
-                        nom=reader.readLine();
-                        Node n1 = xarxa.node(nom);
-                        if(!n1.aixetaOberta()){
-                            historial.add(linia + " " + nom);
-                        }
-                        xarxa.obrirAixeta(n1);
-                    }
-                    else if (linia.equals("backtrack")) {
-                        int n = Integer.parseInt(reader.readLine());
-                        recular(n);
-                    } else if (linia.equals("cabal")) {
-                        Node n1 = xarxa.node(reader.readLine());
-                        cabal = Float.parseFloat(reader.readLine());
-                        Origen o=(Origen) n1;
-                        xarxa.establirCabal(o, cabal);
-                    } else if (linia.equals("demanda")) {
-                        Node n1 = xarxa.node(reader.readLine());
-                        demanda = Float.parseFloat(reader.readLine());
-                        Terminal n=(Terminal) n1;
-                        xarxa.establirDemanda(n, demanda);
-                    } else if (linia.equals("cicles")) {
-                        nom=reader.readLine();
-                        Node n1 = xarxa.node(nom);
-                        Origen o=(Origen) n1;
-                        if (gestor.teCicles(xarxa, o)) {
-                            writer.println(nom+" te cicles");
-                        } else {
-                            writer.println(nom + " no te cicles");
-                        }
-                    } else if (linia.equals("arbre")) {
-                        nom= reader.readLine();
-                        Node n1 = xarxa.node(nom);
-                        Origen o=(Origen) n1;
-                        if (gestor.esArbre(xarxa, o)) {
-                            writer.println(n1.id() + " es un arbre");
-                        } else {
-                            writer.println(n1.id() + " no es un arbre");
-                        }
-                    } else if (linia.equals("cabal minim")) {
-                        Node n1 = xarxa.node(reader.readLine());
-                        Origen o=(Origen) n1;
-                        linia = reader.readLine().replaceAll("[^0-9]", "");
-                        cabal = Float.parseFloat(linia);
-                        writer.println("cabal minim");
-                        writer.println(gestor.cabalMinim(xarxa, o, cabal));
-                    }
-                    else if (linia.equals("exces cabal")) {
-                        Set<Canonada> canonades = new HashSet<Canonada>();
-                        while (true) {
-                            reader.mark(1000);
-                            linia = reader.readLine();
-                            if (linia == null || esOperacio(linia)) {
-                                reader.reset();
-                                break;
-                            }
-
-                            if(linia.matches(regex)){
-                                    Canonada can = xarxa.canonada(linia);
-                                    if(can!=null) {
-                                        canonades.add(can);
-                                    }
-
-                            }
-                            else{
-                                System.out.println("\nError a les dades --> " + linia + " no és una canonada");
-                            }
-
+                        epoca.buidar(writer);
+                        Comanda comanda = comandes.get(linia);
+                        if (comanda != null) {
+                            comanda.executar(lector, writer);
                         }
-                        writer.println("exces cabal");
-                        Set<Canonada> resultats = gestor.excesCabal(xarxa,canonades);
-                        for (Canonada canonada : resultats) {
-                            writer.println(canonada.node1().id()+"-"+canonada.node2().id());
+                        else{
+                            System.out.println("Operació desconeguda: " + linia);
                         }
                     }
-
-                    else if (linia.equals("situacio")) {
-                        Map<Terminal, Boolean> llista = new HashMap<>();
-
-                        while (true) {
-                            reader.mark(1000);
-                            linia = reader.readLine();
-                            if (linia == null || esOperacio(linia)) {
-                                reader.reset();
-                                break;
-                            }
-                            String[] parts = linia.split(" ");
-                            if (parts.length == 2) {
-                                Terminal terminal = (Terminal) xarxa.node(parts[0]);
-                                Boolean repAigua = parts[1].equals("SI");
-                                llista.put(terminal, repAigua);
-                            }
-                            else{
-                                System.out.println("\nError a les dades --> " + linia);
-                            }
-                        }
-                        Set<Node> resultats = gestor.aixetesTancar(xarxa, llista);
-                        writer.println("tancar");
-                        for (Node n : resultats) {
-                            writer.println(n.id());
-                        }
-                    }
-
-                    else if(linia.equals("cabal abonat")){
-                    dni=reader.readLine();
-                    cabal=xarxa.cabalAbonat(dni);
-                    writer.println("cabal abonat");
-                    writer.println(cabal);
-                }
-                else if(linia.equals("proximitat")){
-                    Set<Node> aixetes = new HashSet<>();
-                    coor=reader.readLine();
-                    Coordenades cord = new Coordenades(coor);
-                    while(true){
-                        reader.mark(1000);
-                        linia=reader.readLine();
-                        if(linia == null || esOperacio(linia)){
-                            reader.reset();
-                            break;
-                        }
-                        Node aix = xarxa.node(linia);
-                        aixetes.add(aix);
-                    }
-                    List<Node> resultats = GestorXarxes.proximitat(cord,aixetes);
-                    writer.println("proximitat");
-                    for (Node n : resultats) {
-                        writer.println(n.id());
-                    }
-                }
-                else if(linia.equals("dibuix")){
-                        Node n=xarxa.node(reader.readLine());
-                        xarxa.dibuixar(n);
-                }
-                else if(linia.equals("max-flow")){
-                        Node n=xarxa.node(reader.readLine());
-                        Origen o=(Origen) n;
-                        GestorXarxes.fluxMaxim(xarxa, o);
-                    }
-                else{
-                        System.out.println("Operació desconeguda: " + linia);
                 }
+                finally {
+                    epoca.buidar(writer);
                 }
-
-
-
-
         } catch(IOException e){
             e.printStackTrace();
         }
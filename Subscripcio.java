@@ -0,0 +1,73 @@
+/** @file Subscripcio.java
+    @brief Classe Subscripcio
+*/
+
+/** @class Subscripcio
+    @brief Conjunt d'abonats o nodes d'una xarxa dels quals un observador vol saber els canvis de cabal
+    @author Roger Costa
+*/
+
+import java.util.*;
+
+public class Subscripcio {
+    //Descripció general: Subscripció creada per Xarxa.subscriureAbonats o Xarxa.subscriureNodes. Guarda l'últim
+    //                    cabal notificat de cada clau (identificador d'abonat o de node) per enviar només els canvis.
+
+    private final ObservadorCabal observador;     ///< Qui rep els canvis
+    private final Map<Node,List<String>> claus;   ///< Claus subscrites de cada node
+    private final Map<String,Float> valors;       ///< Últim cabal notificat de cada clau
+
+    /** @brief Crea una subscripció buida
+	@pre  observador no és null
+	@post S'ha creat una subscripció sense cap clau
+    */
+    Subscripcio(ObservadorCabal observador){
+        this.observador = observador;
+        this.claus = new HashMap<>();
+        this.valors = new LinkedHashMap<>();
+    }
+
+    /** @brief Afegeix la clau del node a la subscripció
+	@pre  node pertany a la xarxa
+	@post La clau queda subscrita al cabal de node, amb valor inicial cabal
+    */
+    void afegir(Node node, String clau, float cabal){
+        claus.computeIfAbsent(node, k -> new ArrayList<>()).add(clau);
+        valors.put(clau, cabal);
+    }
+
+    /** @brief Nodes de la subscripció
+	@pre  ---
+	@post Retorna els nodes dels quals depèn alguna clau de la subscripció
+    */
+    Set<Node> nodes(){
+        return claus.keySet();
+    }
+
+    /** @brief Actualitza el cabal de node i apunta a canvis les claus que han canviat
+	@pre  node pertany a la subscripció, canvis no és null
+	@post Les claus de node valen cabal; les que tenien un altre valor s'han afegit a canvis
+    */
+    void actualitzar(Node node, float cabal, Map<String,Float> canvis){
+        for (String clau : claus.get(node)) {
+            Float anterior = valors.put(clau, cabal);
+            if (anterior == null || Float.compare(anterior, cabal) != 0) canvis.put(clau, cabal);
+        }
+    }
+
+    /** @brief Retorna l'observador de la subscripció
+	@pre  ---
+	@post Retorna l'observador de la subscripció
+    */
+    public ObservadorCabal observador(){
+        return observador;
+    }
+
+    /** @brief Retorna l'últim cabal notificat de cada clau
+	@pre  ---
+	@post Retorna un mapa no modificable amb l'últim cabal conegut de cada abonat o node subscrit
+    */
+    public Map<String,Float> valors(){
+        return Collections.unmodifiableMap(valors);
+    }
+}
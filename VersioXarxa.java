@@ -0,0 +1,366 @@
+/** @file VersioXarxa.java
+    @brief Classe VersioXarxa
+*/
+
+/** @class VersioXarxa
+    @brief Versió alternativa de l'estat d'una xarxa, per provar canvis sense modificar-la
+    @author Roger Costa
+*/
+
+import java.lang.ref.WeakReference;
+import java.util.*;
+
+public class VersioXarxa {
+    //Descripció general: Bifurcació d'una Xarxa (o d'una altra VersioXarxa) que comparteix la topologia i tot l'estat
+    //                    que no canvia. Només guarda els valors que difereixen de la versió de la qual prové: estats
+    //                    d'aixetes, demandes, cabals i capacitats, indexats per la instantània de la xarxa en el moment
+    //                    de bifurcar. Bifurcar i modificar costen O(1) i la memòria és proporcional al nombre de canvis.
+    //                    Els valors que no ha canviat es busquen a la versió pare, i al final als nodes de la xarxa.
+    //                    Perquè una versió no vegi els canvis posteriors de la seva pare, abans de canviar un valor la
+    //                    pare el conserva a les filles que encara no l'han canviat (conservar).
+    //                    Els canvis de topologia de la xarxa posteriors a la bifurcació no afecten la versió.
+
+    private final Xarxa xarxa;                      ///< Xarxa d'on prové la versió
+    private final VersioXarxa pare;                 ///< Versió d'on s'ha bifurcat, null si s'ha bifurcat de la xarxa
+    private final InstantaniaXarxa instantania;     ///< Topologia de la xarxa en el moment de bifurcar
+    private final Map<Integer,Boolean> aixetes;     ///< Estat de les aixetes que difereixen de la versió pare
+    private final Map<Integer,Float> demandes;      ///< Demandes actuals que difereixen de la versió pare
+    private final Map<Integer,Float> cabals;        ///< Cabals dels origens que difereixen de la versió pare
+    private final Map<Integer,Float> capacitats;    ///< Capacitats de canonades que difereixen de la versió pare
+    private final List<WeakReference<VersioXarxa>> filles; ///< Versions bifurcades d'aquesta
+    private ResultatCabal resultat;                 ///< Demanda i cabal de la versió, null si s'han de calcular
+
+    /** @brief Crea una versió de xarxa sense cap canvi
+	@pre  instantania és la instantània actual de xarxa; si pare no és null, en prové amb la mateixa instantània
+	@post S'ha creat una versió amb el mateix estat que pare (o que xarxa, si pare és null)
+    */
+    VersioXarxa(Xarxa xarxa, VersioXarxa pare, InstantaniaXarxa instantania){
+        this.xarxa = xarxa;
+        this.pare = pare;
+        this.instantania = instantania;
+        this.aixetes = new HashMap<>();
+        this.demandes = new HashMap<>();
+        this.cabals = new HashMap<>();
+        this.capacitats = new HashMap<>();
+        this.filles = new ArrayList<>();
+        this.resultat = null;
+    }
+
+    /** @brief Bifurca la versió
+	@pre  ---
+	@post Retorna una versió nova amb el mateix estat que aquesta; els canvis posteriors de qualsevol de les dues no
+	      afecten l'altra
+    */
+    public VersioXarxa bifurcar(){
+        VersioXarxa v = new VersioXarxa(xarxa, this, instantania);
+        filles.add(new WeakReference<>(v));
+        return v;
+    }
+
+    /** @brief Retorna la xarxa d'on prové la versió
+	@pre  ---
+	@post Retorna la xarxa de la qual s'ha bifurcat la versió o alguna de les seves versions pare
+    */
+    public Xarxa xarxa(){
+        return xarxa;
+    }
+
+    /** @brief Retorna el nombre de valors que la versió guarda
+	@pre  ---
+	@post Retorna el nombre de valors en què la versió difereix de la seva pare (o en conserva un d'anterior)
+    */
+    public int nombreCanvis(){
+        return aixetes.size() + demandes.size() + cabals.size() + capacitats.size();
+    }
+
+    /** @brief Obre l'aixeta del node a la versió
+	@pre  node pertany a la xarxa
+	@post L'aixeta del node està oberta a la versió
+    */
+    //Excepcions: NoSuchElementException si node no pertany a la xarxa
+    public void obrirAixeta(Node node){
+        try{
+            int i = index(node);
+            if(!oberta(i)){
+                conservarFilles(DiariCanvis.AIXETA, i, 0);
+                aixetes.put(i, true);
+                resultat = null;
+            }
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+    }
+
+    /** @brief Tanca l'aixeta del node a la versió
+	@pre  node pertany a la xarxa
+	@post L'aixeta del node està tancada a la versió
+    */
+    //Excepcions: NoSuchElementException si node no pertany a la xarxa
+    public void tancarAixeta(Node node){
+        try{
+            int i = index(node);
+            if(oberta(i)){
+                conservarFilles(DiariCanvis.AIXETA, i, 1);
+                aixetes.put(i, false);
+                resultat = null;
+            }
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+    }
+
+    /** @brief Estableix el cabal d'un origen a la versió
+	@pre  nodeOrigen pertany a la xarxa i cabal >= 0
+	@post El cabal de nodeOrigen a la versió és cabal
+    */
+    //Excepcions: NoSuchElementException si nodeOrigen no pertany a la xarxa
+    //            IllegalArgumentException si cabal és negatiu
+    public void establirCabal(Origen nodeOrigen, float cabal){
+        try{
+            int i = index(nodeOrigen);
+            if(cabal<0) throw new IllegalArgumentException("Cabal no pot ser negatiu cabal ha de ser >=0");
+
+            conservarFilles(DiariCanvis.CABAL, i, cabalOrigen(i));
+            cabals.put(i, cabal);
+            resultat = null;
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        catch (IllegalArgumentException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+    }
+
+    /** @brief Estableix la demanda actual d'un terminal a la versió
+	@pre  nodeTerminal pertany a la xarxa i demanda >= 0
+	@post La demanda actual de nodeTerminal a la versió és demanda
+    */
+    //Excepcions: NoSuchElementException si nodeTerminal no pertany a la xarxa
+    //            IllegalArgumentException si demanda és negativa
+    public void establirDemanda(Terminal nodeTerminal, float demanda){
+        try{
+            int i = index(nodeTerminal);
+            if(demanda<0) throw new IllegalArgumentException("La demanda no pot ser negativa");
+
+            conservarFilles(DiariCanvis.DEMANDA, i, demandaActual(i));
+            demandes.put(i, demanda);
+            resultat = null;
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        catch (IllegalArgumentException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+    }
+
+    /** @brief Estableix la capacitat d'una canonada a la versió
+	@pre  can pertany a la xarxa i capacitat >= 0
+	@post La capacitat de can a la versió és capacitat
+    */
+    //Excepcions: NoSuchElementException si can no pertany a la xarxa
+    //            IllegalArgumentException si capacitat és negativa
+    public void establirCapacitat(Canonada can, float capacitat){
+        try{
+            int k = can==null ? -1 : instantania.posicio(can);
+            if(k<0) throw new NoSuchElementException("La canonada no pertany a la xarxa");
+            if(capacitat<0) throw new IllegalArgumentException("La capacitat no pot ser negativa");
+
+            conservarFilles(DiariCanvis.CAPACITAT, k, capacitatCanonada(k));
+            capacitats.put(k, capacitat);
+            resultat = null;
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        catch (IllegalArgumentException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+    }
+
+    /** @brief Diu si l'aixeta del node és oberta a la versió
+	@pre  node pertany a la xarxa
+	@post Retorna true si l'aixeta del node és oberta a la versió
+    */
+    //Excepcions: NoSuchElementException si node no pertany a la xarxa
+    public boolean aixetaOberta(Node node){
+        try{
+            return oberta(index(node));
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        return false;
+    }
+
+    /** @brief Retorna la demanda teòrica al node a la versió
+	@pre  node pertany a la xarxa
+	@post Retorna la demanda teòrica al node segons l'estat de la versió
+    */
+    //Excepcions: NoSuchElementException si node no pertany a la xarxa
+    public float demanda(Node node){
+        try{
+            int i = index(node);
+            if(node instanceof Terminal) return oberta(i) ? demandaActual(i) : 0;
+            return resultat().demanda(i);
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        return 0;
+    }
+
+    /** @brief Retorna el cabal teòric al node a la versió
+	@pre  node pertany a la xarxa
+	@post Retorna el cabal teòric al node segons l'estat de la versió
+    */
+    //Excepcions: NoSuchElementException si node no pertany a la xarxa
+    public float cabal(Node node){
+        try{
+            int i = index(node);
+            if(node instanceof Origen) return oberta(i) ? cabalOrigen(i) : 0;
+            return resultat().cabal(i);
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        return 0;
+    }
+
+    /** @brief Retorna el cabal d'un abonat a la versió
+	@pre  Existeix un client identificat amb idClient a la xarxa
+	@post Retorna el cabal al punt d'abastament del client identificat amb idClient segons l'estat de la versió
+    */
+    //Excepcions: NoSuchElementException si idClient no es troba a la xarxa
+    public float cabalAbonat(String idClient){
+        try{
+            Node n = xarxa.abonats().get(idClient);
+            if(n==null) throw new NoSuchElementException("El client no pertany a la xarxa");
+            return cabal(n);
+        }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        return 0;
+    }
+
+    /** @brief Conserva el valor que un element té ara a la versió, abans que la xarxa el canviï
+	@pre  Es crida des de la xarxa de la qual s'ha bifurcat la versió; tipus és un tipus de DiariCanvis diferent de
+	      CANONADA, element és el node o la canonada que es canviarà i anterior el valor que té ara
+	@post La versió continua veient anterior per element, encara que la xarxa el canviï
+    */
+    void conservar(byte tipus, Object element, float anterior){
+        int i = tipus == DiariCanvis.CAPACITAT ? instantania.posicio((Canonada) element) : instantania.index((Node) element);
+        if (i >= 0) conservar(tipus, i, anterior);
+    }
+
+    /** @brief Conserva el valor que l'element i té ara a la versió, abans que la versió pare el canviï
+	@pre  i és un índex de node (o una posició de canonada, si tipus és CAPACITAT) de la instantània
+	@post La versió continua veient anterior per l'element i
+    */
+    private void conservar(byte tipus, int i, float anterior){
+        switch (tipus) {
+            case DiariCanvis.AIXETA: aixetes.putIfAbsent(i, anterior != 0); break;
+            case DiariCanvis.DEMANDA: demandes.putIfAbsent(i, anterior); break;
+            case DiariCanvis.CABAL: cabals.putIfAbsent(i, anterior); break;
+            case DiariCanvis.CAPACITAT: capacitats.putIfAbsent(i, anterior); break;
+        }
+    }
+
+    /** @brief Conserva a les versions filles el valor que l'element i té ara, abans de canviar-lo
+	@pre  i és un índex de node (o una posició de canonada, si tipus és CAPACITAT) de la instantània
+	@post Cap versió filla no veurà el canvi de l'element i; s'han oblidat les filles que ja no s'usen
+    */
+    private void conservarFilles(byte tipus, int i, float anterior){
+        Iterator<WeakReference<VersioXarxa>> it = filles.iterator();
+        while (it.hasNext()) {
+            VersioXarxa v = it.next().get();
+            if (v == null) it.remove();
+            else v.conservar(tipus, i, anterior);
+        }
+    }
+
+    /** @brief Índex del node a la instantània
+	@pre  ---
+	@post Retorna l'índex de node a la instantània de la versió
+    */
+    //Excepcions: NoSuchElementException si node no pertany a la xarxa
+    private int index(Node node){
+        int i = node==null ? -1 : instantania.index(node);
+        if(i<0) throw new NoSuchElementException("El node no pertany a la xarxa");
+        return i;
+    }
+
+    /** @brief Estat de l'aixeta del node i a la versió
+	@pre  i és un índex de la instantània
+	@post Retorna true si l'aixeta del node i és oberta a la versió
+    */
+    private boolean oberta(int i){
+        for (VersioXarxa v = this; v != null; v = v.pare) {
+            Boolean b = v.aixetes.get(i);
+            if (b != null) return b;
+        }
+        return instantania.aixetaOberta(i);
+    }
+
+    /** @brief Demanda actual del node i a la versió
+	@pre  i és un índex de la instantània
+	@post Retorna la demanda actual del node i a la versió, 0 si no és un terminal
+    */
+    private float demandaActual(int i){
+        for (VersioXarxa v = this; v != null; v = v.pare) {
+            Float d = v.demandes.get(i);
+            if (d != null) return d;
+        }
+        return instantania.demandaActual(i);
+    }
+
+    /** @brief Cabal del node i a la versió
+	@pre  i és un índex de la instantània
+	@post Retorna el cabal del node i a la versió, 0 si no és un origen
+    */
+    private float cabalOrigen(int i){
+        for (VersioXarxa v = this; v != null; v = v.pare) {
+            Float c = v.cabals.get(i);
+            if (c != null) return c;
+        }
+        return instantania.cabal(i);
+    }
+
+    /** @brief Capacitat de la canonada k a la versió
+	@pre  k és una posició de canonada de la instantània
+	@post Retorna la capacitat de la canonada k a la versió
+    */
+    private float capacitatCanonada(int k){
+        for (VersioXarxa v = this; v != null; v = v.pare) {
+            Float c = v.capacitats.get(k);
+            if (c != null) return c;
+        }
+        return instantania.capacitat(k);
+    }
+
+    /** @brief Calcula la demanda i el cabal de tots els nodes a la versió
+	@pre  ---
+	@post Retorna la demanda i el cabal teòrics de tots els nodes i canonades segons l'estat de la versió; es calcula
+	      com a molt una vegada entre dos canvis de la versió
+    */
+    private ResultatCabal resultat(){
+        if (resultat == null) {
+            EstatVectors estat = new EstatVectors(instantania);
+            //Canvis de les versions, de la més antiga a la més nova
+            Deque<VersioXarxa> versions = new ArrayDeque<>();
+            for (VersioXarxa u = this; u != null; u = u.pare) versions.push(u);
+            for (VersioXarxa u : versions) {
+                for (Map.Entry<Integer,Boolean> e : u.aixetes.entrySet()) estat.establirAixeta(e.getKey(), e.getValue());
+                for (Map.Entry<Integer,Float> e : u.demandes.entrySet()) estat.establirDemanda(e.getKey(), e.getValue());
+                for (Map.Entry<Integer,Float> e : u.cabals.entrySet()) estat.establirCabal(e.getKey(), e.getValue());
+                for (Map.Entry<Integer,Float> e : u.capacitats.entrySet()) estat.establirCapacitat(e.getKey(), e.getValue());
+            }
+            resultat = MotorCabal.calcular(instantania, MotorDemanda.calcular(instantania, estat), estat);
+        }
+        return resultat;
+    }
+}
@@ -8,6 +8,8 @@
 */
 
 import java.util.*;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
 
 import org.graphstream.graph.implementations.*;
 import org.graphstream.graph.*;
@@ -19,6 +21,18 @@ public class Xarxa {
     private Map<Node,Set<Canonada>> entrada; ///< La llista de canonades son les que entren al Node
     private Map<Node,Set<Canonada>> sortida; ///< La llista de canonades son les que surten del Node
     private Map<String,Node> clients;        ///< Per cada client en quin node esta abonat
+    private Map<String,Node> nodes;          ///< Index dels nodes de la xarxa per identificador
+    private InstantaniaXarxa instantania;    ///< Topologia congelada, null si ha canviat des de l'última
+    private List<Subscripcio> subscripcions; ///< Subscripcions als canvis de cabal
+    private Map<Node,List<Subscripcio>> subscritsNode; ///< Subscripcions que depenen de cada node
+    private ResultatCabal darrerResultat;    ///< Cabals notificats per última vegada als subscriptors, null si no n'hi ha
+    private long versio;                     ///< S'incrementa a cada modificació de la topologia o de l'estat de la xarxa
+    private MemoriaResultats memoria;        ///< Resultats calculats sobre la versió actual
+    private long versioTopologia;            ///< S'incrementa cada cop que s'afegeix un node o una canonada
+    private MemoriaResultats memoriaTopologia; ///< Resultats calculats sobre la topologia actual
+    private IndexEspacial indexEspacial;     ///< Índex espacial dels nodes, null si s'ha de reconstruir
+    private DiariCanvis diari;               ///< Modificacions que es poden desfer
+    private List<WeakReference<VersioXarxa>> versions; ///< Versions bifurcades de la xarxa
 
 
     /**
@@ -30,6 +44,17 @@ public class Xarxa {
         entrada=new HashMap<Node,Set<Canonada>>();
         sortida=new HashMap<Node,Set<Canonada>>();
         clients= new HashMap<>();
+        nodes= new LinkedHashMap<>();
+        instantania= null;
+        subscripcions= new ArrayList<>();
+        subscritsNode= new HashMap<>();
+        darrerResultat= null;
+        versio= 0;
+        memoria= new MemoriaResultats();
+        versioTopologia= 0;
+        memoriaTopologia= new MemoriaResultats();
+        diari= new DiariCanvis();
+        versions= new ArrayList<>();
     }
 
      /**
@@ -38,18 +63,70 @@ public class Xarxa {
 	    @post Retorna el node de la xarxa amb identificador id
     */
     public Node node(String id){
+        return nodes.get(id);
+    }
 
-        Set<Node> e = entrada.keySet();
-        for (Node elem : e) {
-            String n = elem.id();
-            if(n.equals(id)) return elem;
-        }
+    /** @brief Retorna la topologia actual de la xarxa congelada en vectors
+	@pre  ---
+	@post Retorna una instantània de la topologia actual (només hi canvien les capacitats, amb establirCapacitat); es reaprofita mentre no s'afegeixin nodes ni canonades
+    */
+    public synchronized InstantaniaXarxa snapshot(){
+        if(instantania==null) instantania = new InstantaniaXarxa(nodes.values(), entrada, sortida);
+        return instantania;
+    }
 
-        Set<Node> s = sortida.keySet();
-        for (Node elem : s) {
-            String n = elem.id();
-            if(n.equals(id)) return elem;
-        }
+    /** @brief Retorna l'índex espacial dels nodes de la xarxa
+	@pre  ---
+	@post Retorna un índex de les coordenades de tots els nodes de la xarxa; es reaprofita mentre no s'afegeixin nodes
+    */
+    public synchronized IndexEspacial indexEspacial(){
+        if(indexEspacial==null) indexEspacial = new IndexEspacial(nodes.values());
+        return indexEspacial;
+    }
+
+    /** @brief Retorna els nodes de la xarxa
+	@pre  ---
+	@post Retorna tots els nodes de la xarxa, en l'ordre en què es van afegir
+    */
+    Collection<Node> nodes(){
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+    /** @brief Retorna els abonats de la xarxa
+	@pre  ---
+	@post Retorna, per cada abonat de la xarxa, el terminal on està abonat
+    */
+    Map<String,Node> abonats(){
+        return Collections.unmodifiableMap(clients);
+    }
+
+    /** @brief Desa la xarxa al fitxer binari fitxer
+	@pre  ---
+	@post El fitxer fitxer conté els nodes, canonades, aixetes, cabals, demandes i abonats de la xarxa
+    */
+    //Excepcions: IOException si no es pot escriure el fitxer
+    public void desar(String fitxer) throws IOException {
+        FitxerXarxa.desar(this, fitxer);
+    }
+
+    /** @brief Llegeix una xarxa desada amb desar
+	@pre  ---
+	@post Retorna la xarxa desada al fitxer binari fitxer
+    */
+    //Excepcions: IOException si no es pot llegir el fitxer o no conté una xarxa
+    public static Xarxa obrir(String fitxer) throws IOException {
+        return FitxerXarxa.obrir(fitxer);
+    }
+
+    /** @brief Busca a l'index el node registrat amb el mateix id que node
+	@pre  ---
+	@post Retorna el node de la xarxa que és igual a node, null si node és null o no pertany a la xarxa
+    */
+    private Node registrat(Node node){
+        if(node==null) return null;
+
+        Node n = nodes.get(node.id());
+        if(n!=null && n.equals(node)) return n;
         return null;
     }
    
@@ -82,10 +159,15 @@ public class Xarxa {
     //Excepcions: IllegalArgumentException si ja existeix un node amb aquest id
     public void afegir(Origen nodeOrigen){
         try {
-            if(sortida.containsKey(nodeOrigen)) throw new IllegalArgumentException("Ja existeix un node a la xarxa amb aquest id");
+            if(nodes.containsKey(nodeOrigen.id())) throw new IllegalArgumentException("Ja existeix un node a la xarxa amb aquest id");
 
             Set<Canonada> llS=new HashSet<>();
             sortida.put(nodeOrigen,llS);
+            nodes.put(nodeOrigen.id(),nodeOrigen);
+            indexEspacial=null;
+            instantania=null;
+            versio++;
+            versioTopologia++;
 
         } catch (IllegalArgumentException e) {
             System.out.println("\nError a les dades --> " + e.getMessage());
@@ -100,10 +182,15 @@ public class Xarxa {
     //Excepcions: IllegalArgumentException si ja existeix un node amb aquest id
     public void afegir(Terminal nodeTerminal){
         try {
-            if(entrada.containsKey(nodeTerminal)) throw new IllegalArgumentException("Ja existeix un node a la xarxa amb aquest id");
+            if(nodes.containsKey(nodeTerminal.id())) throw new IllegalArgumentException("Ja existeix un node a la xarxa amb aquest id");
 
             Set<Canonada> llE=new HashSet<>();
             entrada.put(nodeTerminal,llE);
+            nodes.put(nodeTerminal.id(),nodeTerminal);
+            indexEspacial=null;
+            instantania=null;
+            versio++;
+            versioTopologia++;
 
         } catch (IllegalArgumentException e) {
             System.out.println("\nError a les dades --> " + e.getMessage());
@@ -118,14 +205,18 @@ public class Xarxa {
     //Excepcions: IllegalArgumentException si ja existeix un node amb aquest id
     public void afegir(Connexio nodeConnexio){
         try {
-            if(entrada.containsKey(nodeConnexio)) throw new IllegalArgumentException("Ja existeix un node a la xarxa amb aquest id");
-            if(sortida.containsKey(nodeConnexio)) throw new IllegalArgumentException("Ja existeix un node a la xarxa amb aquest id");
+            if(nodes.containsKey(nodeConnexio.id())) throw new IllegalArgumentException("Ja existeix un node a la xarxa amb aquest id");
 
             Set<Canonada> llE=new HashSet<>();
             entrada.put(nodeConnexio,llE);
 
             Set<Canonada> llS=new HashSet<>();
             sortida.put(nodeConnexio,llS);
+            nodes.put(nodeConnexio.id(),nodeConnexio);
+            indexEspacial=null;
+            instantania=null;
+            versio++;
+            versioTopologia++;
 
         } catch (IllegalArgumentException e) {
             System.out.println("\nError a les dades --> " + e.getMessage());
@@ -155,6 +246,11 @@ public class Xarxa {
 
                 entrada.get(node2).add(can);
                 sortida.get(node1).add(can);
+                diari.afegir(DiariCanvis.CANONADA, can, 0);
+                instantania=null;
+                versio++;
+                versioTopologia++;
+                notificarCanvis(node1, node2);
 
             }
             catch (NoSuchElementException f){
@@ -175,9 +271,9 @@ public class Xarxa {
     public void abonar(String idClient, Terminal nodeTerminal){
         try{
             
-            if (entrada.get(nodeTerminal)==null) throw new NoSuchElementException("El node terminal no existeix a la Xarxa1");
-
             Node sort= buscar(nodeTerminal, entrada);
+            if (sort==null) throw new NoSuchElementException("El node terminal no existeix a la Xarxa1");
+
             clients.put(idClient,sort);
 
             if (sort instanceof Terminal){
@@ -198,12 +294,13 @@ public class Xarxa {
     //Excepcions: NoSuchElementException si node no pertany a la xarxa
     public void obrirAixeta(Node node){
         try{
-            if(entrada.get(node)==null && sortida.get(node)==null) throw new NoSuchElementException("El node no pertany a la xarxa2");
-            Node entr= buscar(node, entrada);
-            Node sort= buscar(node, sortida);
-           
-            if(sort!=null)sort.obrirAixeta();
-            if(entr!=null) entr.obrirAixeta();
+            Node n= registrat(node);
+            if(n==null) throw new NoSuchElementException("El node no pertany a la xarxa2");
+
+            if(!n.aixetaOberta()) registrarCanvi(DiariCanvis.AIXETA, n, 0);
+            n.obrirAixeta();
+            versio++;
+            notificarCanvis(n);
         }
         catch (NoSuchElementException e){
             System.out.println("\nError a les dades --> " + e.getMessage());
@@ -215,15 +312,8 @@ public class Xarxa {
 	@post Retorna el node que hi ha el map que sigui igual que b
     */
     private Node buscar(Node b, Map<Node,Set<Canonada>> map){
-        Set<Node> s=map.keySet();
-        Iterator<Node> it=s.iterator();
-
-        while(it.hasNext()){
-            Node n=it.next();
-            if(n.equals(b)) {
-                return n;
-            }
-        }
+        Node n=registrat(b);
+        if(n!=null && map.containsKey(n)) return n;
         return null;
     }
      
@@ -235,13 +325,13 @@ public class Xarxa {
     //Excepcions: NoSuchElementException si node no pertany a la xarxa
     public void tancarAixeta(Node node){
         try{
-            if(entrada.get(node)==null && sortida.get(node)==null) throw new NoSuchElementException("El node no pertany a la xarxa3");
-
-            Node entr= buscar(node, entrada);
-            Node sort= buscar(node, sortida);
+            Node n= registrat(node);
+            if(n==null) throw new NoSuchElementException("El node no pertany a la xarxa3");
 
-            if(sort!=null) sort.tancarAixeta();
-            if(entr!=null) entr.tancarAixeta();
+            if(n.aixetaOberta()) registrarCanvi(DiariCanvis.AIXETA, n, 1);
+            n.tancarAixeta();
+            versio++;
+            notificarCanvis(n);
 
         }
         catch (NoSuchElementException e){
@@ -259,15 +349,18 @@ public class Xarxa {
     //            IllegalArgumentException si cabal és negatiu
     public void establirCabal(Origen nodeOrigen, float cabal){
         try{
-            if(sortida.get(nodeOrigen)==null) throw new NoSuchElementException("El node no pertany a la xarxa4");
+            Node entr= buscar(nodeOrigen, sortida);
+            if(entr==null) throw new NoSuchElementException("El node no pertany a la xarxa4");
 
             try{
                 if(cabal<0) throw new IllegalArgumentException("Cabal no pot ser negatiu cabal ha de ser >=0");
 
-                Node entr= buscar(nodeOrigen, sortida);
                 if (entr instanceof Origen){
                     Origen o = (Origen) entr;
+                    registrarCanvi(DiariCanvis.CABAL, o, o.cabal());
                     o.establirCabal(cabal);
+                    versio++;
+                    notificarCanvis(o);
                 }
 
             }catch (IllegalArgumentException e){
@@ -296,7 +389,10 @@ public class Xarxa {
 
                Terminal t= (Terminal) n;
 
+               registrarCanvi(DiariCanvis.DEMANDA, t, t.demandaActual());
                t.establirDemandaActual(demanda);
+               versio++;
+               notificarCanvis(t);
             }
             catch (IllegalArgumentException e){
                System.out.println("\nError a les dades --> " + e.getMessage());
@@ -307,88 +403,160 @@ public class Xarxa {
         }
     }
      
-    /** @brief Distribueix per als nodes de sobre la demanda que es propaga
-	@pre  ll inicialitzada, suma>=0, terminal determina si el node ant és terminal 
-	@post Mira quantes canonades entren al node i distribueix el valor de suma proporcionalment
-    */
-    private float distribuirPerSobre(Set<Canonada> can,float suma, boolean terminal, Node ant){
-        Iterator<Canonada> it = can.iterator();
-        float sumCap = 0;
-        Terminal t = null;
-        float capacitatCan = 0;
-        while(it.hasNext()){
-            Canonada c = it.next();
-            sumCap = sumCap + c.capacitat();
-            
-            if(c.node1().equals(ant)){
-                if(terminal) t = (Terminal) c.node2();
-                capacitatCan = c.capacitat();
-            }
+    /** @brief Canvia la capacitat de la canonada can
+	@pre  can pertany a la xarxa i capacitat >= 0
+	@post La capacitat de can és capacitat
+    */
+    //Excepcions: NoSuchElementException si can no pertany a la xarxa
+    //            IllegalArgumentException si capacitat és negativa
+    public void establirCapacitat(Canonada can, float capacitat){
+        try{
+            if(can==null || sortida.get(can.node1())==null || !sortida.get(can.node1()).contains(can)) throw new NoSuchElementException("La canonada no pertany a la xarxa");
+            if(capacitat<0) throw new IllegalArgumentException("La capacitat no pot ser negativa");
+
+            registrarCanvi(DiariCanvis.CAPACITAT, can, can.capacitat());
+            can.establirCapacitat(capacitat);
+            if(instantania!=null) instantania.establirCapacitat(instantania.posicio(can), capacitat);
+            versio++;
+            notificarCanvis(can.node1(), can.node2());
         }
+        catch (NoSuchElementException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+        catch (IllegalArgumentException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+    }
 
-        float prov=0;
-        if(terminal) prov= suma + (capacitatCan/sumCap)* t.demandaActual();
-        else prov = ((capacitatCan/sumCap)*suma);
+    /** @brief Retorna un punt de restauració de l'estat actual de la xarxa
+	@pre  ---
+	@post Retorna el nombre de modificacions que es poden desfer; restaurar(punt) torna la xarxa a l'estat actual
+    */
+    public int puntRestauracio(){
+        return diari.mida();
+    }
 
-        if(terminal && capacitatCan >= prov)
-            return prov; // Si terminal capacitat canonada hi cap la demanda
-        else if (terminal)
-            return capacitatCan; // Si terminal capacitat canonada NO hi cap la demanda
-        else if (capacitatCan>= prov)
-            return prov; // Si NO terminal capacitat canonada hi cap la demanda
-        else
-            return capacitatCan; // Si NO terminal capacitat canonada NO hi cap la demanda
+    /** @brief Desfà les n últimes modificacions de la xarxa
+	@pre  n >= 0
+	@post S'han desfet les n últimes modificacions (totes, si n'hi ha menys de n)
+    */
+    public void desfer(int n){
+        restaurar(Math.max(0, diari.mida() - Math.max(0, n)));
     }
-     
 
-/** @brief Retorna suma de demandes per sota el node
-	@pre  node pertany a la xarxa 
-	@post Retorna la demanda teòrica al Node parar segons la configuració actual de la xarxa
-    */
-    public float demandaI(Node node, Node ant,Node inicial){
-        float suma=0;
-        Set<Canonada> canonades = sortida.get(node);
-      //  if(!node.aixetaOberta()) return 0;
-        if (canonades != null) {
-            Iterator<Canonada> itC = canonades.iterator();
-            while(itC.hasNext()){
-                Node n2 = itC.next().node2();
-                suma = suma + demandaI(n2,node,inicial);
+    /** @brief Torna la xarxa a l'estat d'un punt de restauració
+	@pre  punt s'ha obtingut amb puntRestauracio() i no s'ha desfet ni oblidat cap modificació anterior a punt
+	@post S'han desfet, de la més recent a la més antiga, les modificacions posteriors a punt: estats de les aixetes,
+	      demandes, cabals, capacitats i canonades noves
+    */
+    //Excepcions: IllegalArgumentException si punt no és un punt de restauració vàlid
+    public void restaurar(int punt){
+        try{
+            if(punt<0 || punt>diari.mida()) throw new IllegalArgumentException("Punt de restauració inexistent: " + punt);
+            if(punt==diari.mida()) return;
+
+            Set<Node> mutats = new LinkedHashSet<>();
+            boolean topologia = false;
+            for (int i = diari.mida() - 1; i >= punt; i--) {
+                float anterior = diari.anterior(i);
+                switch (diari.tipus(i)) {
+                    case DiariCanvis.AIXETA: {
+                        Node n = (Node) diari.element(i);
+                        conservarVersions(DiariCanvis.AIXETA, n, n.aixetaOberta() ? 1 : 0);
+                        if (anterior != 0) n.obrirAixeta();
+                        else n.tancarAixeta();
+                        mutats.add(n);
+                        break;
+                    }
+                    case DiariCanvis.DEMANDA: {
+                        Terminal t = (Terminal) diari.element(i);
+                        conservarVersions(DiariCanvis.DEMANDA, t, t.demandaActual());
+                        t.establirDemandaActual(anterior);
+                        mutats.add(t);
+                        break;
+                    }
+                    case DiariCanvis.CABAL: {
+                        Origen o = (Origen) diari.element(i);
+                        conservarVersions(DiariCanvis.CABAL, o, o.cabal());
+                        o.establirCabal(anterior);
+                        mutats.add(o);
+                        break;
+                    }
+                    case DiariCanvis.CAPACITAT: {
+                        Canonada can = (Canonada) diari.element(i);
+                        conservarVersions(DiariCanvis.CAPACITAT, can, can.capacitat());
+                        can.establirCapacitat(anterior);
+                        if(instantania!=null) instantania.establirCapacitat(instantania.posicio(can), anterior);
+                        mutats.add(can.node1());
+                        mutats.add(can.node2());
+                        break;
+                    }
+                    case DiariCanvis.CANONADA: {
+                        Canonada can = (Canonada) diari.element(i);
+                        sortida.get(can.node1()).remove(can);
+                        entrada.get(can.node2()).remove(can);
+                        instantania=null;
+                        topologia = true;
+                        mutats.add(can.node1());
+                        mutats.add(can.node2());
+                        break;
+                    }
+                }
             }
-            //Un cop trobada les demandes de per sota mirar per sobre si es reparteix per dos o mes i retornar la demanda al que volem
-            Set<Canonada> can= entrada.get(node);
-            if(can!=null && can.size()>1 && node!=inicial){
-                if(node.aixetaOberta()) return distribuirPerSobre(can,suma, false,ant);
-                else return 0;
+            diari.truncar(punt);
+            if(topologia){
+                versioTopologia++;
             }
-            if(node.aixetaOberta()) return suma;
-            else return 0;
+            versio++;
+            notificarCanvis(mutats.toArray(new Node[0]));
         }
-        else if (node instanceof Terminal){
-            Set<Canonada> can = entrada.get(node);
-            Iterator<Canonada> it = can.iterator();
-
+        catch (IllegalArgumentException e){
+            System.out.println("\nError a les dades --> " + e.getMessage());
+        }
+    }
 
-            if (can != null && can.size() == 1) {
-                Canonada c = it.next();
-                Terminal t = (Terminal) c.node2();
-                float prov = suma + t.demandaActual();
+    /** @brief Fa definitives les modificacions fetes fins ara
+	@pre  ---
+	@post Les modificacions fetes fins ara ja no es poden desfer
+    */
+    public void oblidarCanvis(){
+        diari.truncar(0);
+    }
 
-                if (c.capacitat() < t.demandaActual())
-                    suma = suma + c.capacitat();
-                else suma = prov;
+    /** @brief Bifurca l'estat actual de la xarxa
+	@pre  ---
+	@post Retorna una versió amb l'estat actual de la xarxa que es pot modificar sense modificar la xarxa; els canvis
+	      posteriors de la xarxa no l'afecten
+    */
+    public VersioXarxa bifurcar(){
+        VersioXarxa v = new VersioXarxa(this, null, snapshot());
+        versions.add(new WeakReference<>(v));
+        return v;
+    }
 
-                if(node.aixetaOberta()) return suma;
-                else return 0;
-            } else {
-                if(node.aixetaOberta()) return distribuirPerSobre(can, suma, true, ant);
-                else return 0;
-            }
+    /** @brief Registra una modificació de l'estat de la xarxa
+	@pre  tipus és un tipus de DiariCanvis diferent de CANONADA; element és a punt de canviar i anterior és el valor que té ara
+	@post La modificació es pot desfer, i les versions bifurcades continuen veient anterior
+    */
+    private void registrarCanvi(byte tipus, Object element, float anterior){
+        diari.afegir(tipus, element, anterior);
+        conservarVersions(tipus, element, anterior);
+    }
 
+    /** @brief Conserva a les versions bifurcades el valor que element té ara
+	@pre  tipus és un tipus de DiariCanvis diferent de CANONADA; element és a punt de canviar i anterior és el valor que té ara
+	@post Cap versió bifurcada no veurà el canvi d'element; s'han oblidat les versions que ja no s'usen
+    */
+    private void conservarVersions(byte tipus, Object element, float anterior){
+        if(versions.isEmpty()) return;
+        Iterator<WeakReference<VersioXarxa>> it = versions.iterator();
+        while (it.hasNext()) {
+            VersioXarxa v = it.next().get();
+            if (v == null) it.remove();
+            else v.conservar(tipus, element, anterior);
         }
-        return 0;
     }
-    
+
      /** @brief  Retorna la demanda teòrica al node segons la configuració actual de la xarxa
 	@pre  node pertany a la xarxa 
 	@post Retorna la demanda teòrica al node segons la configuració actual de la xarxa
@@ -397,7 +565,7 @@ public class Xarxa {
     //Excepcions: NoSuchElementException si node no pertany a la xarxa
     public float demanda(Node node){
 
-    // Recorrer tots els que estan per sota els visitats
+    // Es calcula la demanda de tots els nodes en una sola passada dels terminals cap als origens (MotorDemanda)
     // Quan sarriba a terminal mirar quantes canonades te ajuntades i repartir proporcionalment en els node superiors
     // Si aixeta d'un esta tancada en aquell punt demanda es 0 
     // Si capacitat canonada < cabalNode2(), que connecta el cabal en el cabalNode1()= capacitat
@@ -411,9 +579,7 @@ public class Xarxa {
                 else return 0;
             }
             else{
-                Node n=buscar(node, sortida);
-                
-                return demandaI(n, null,node);
+                return demandes()[snapshot().index(node)];
             }
         }
         catch (NoSuchElementException e){
@@ -445,136 +611,6 @@ public class Xarxa {
     }
      
 
-/** @brief Fa una llista de la suma de demandes que te per sota el node
-	@pre  node pertany a la xarxa 
-	@post Retorna una llista de float amb el valor de les demandes dels nodes als que distribueix aigua node
-    */
-    private List<Float> demandesNode(Node node){
-        Set<Canonada> ll = sortida.get(node);
-        float sum = 0;
-        List<Float> demandes = new ArrayList<>();
-
-        if(ll!=null){
-
-            Iterator<Canonada> itC = ll.iterator();
-
-            while(itC.hasNext()){
-                Node n2 = itC.next().node2();
-                demandes.add(demanda(n2));
-            }
-        }
-
-        return demandes;
-    }
-     
-   
-/** @brief Fa una suma d'una llista de floats
-	@pre  ll ha d'estar inicialitzat, pot estar buida 
-	@post Retorna la suma dels valors de ll
-    */
-    private float sumaDemandesNode(List<Float> ll) {
-
-        Iterator<Float> it = ll.iterator();
-        float res = 0;
-        while (it.hasNext()) {
-            res= res + it.next();
-        }
-        return res;
-    }
-
-/** @brief Retorna el cabal teòric al node segons la configuració actual de la xarxa
-	@pre  El node ha de ser diferent de null i ha de trobar-se a la xarxa, ant es la canonada anterior en la primera iteració null 
-	@post Retorna el cabal teòric al node segons la configuració actual de la xarxa
-    */
-    private float cabalI(Node node,Canonada ant){
-        float suma=0;
-        Set<Canonada> canonades = entrada.get(node);
-        if(demanda(node)==0) return (float) 0.0;
-        if(canonades != null) {
-            Iterator<Canonada> itCan = canonades.iterator();
-
-            while (itCan.hasNext()) {
-
-                Canonada c = itCan.next();
-                Node n1 = c.node1();
-                suma = suma + cabalI(n1, c);
-            }
-            float sDem = sumaDemandesNode(demandesNode(node));
-
-            if(ant!=null){
-                float prov = (demanda(ant.node2()) / sDem) * suma;
-
-                if(ant.capacitat() < prov && node.aixetaOberta()) return ant.capacitat();
-                else if (sDem > suma){
-
-                    if(ant.capacitat()<prov && node.aixetaOberta()) return ant.capacitat();
-                    else if (node.aixetaOberta()) return prov;
-                }
-                else if( sDem <= suma && node.aixetaOberta()) {
-                    //Vol dir que en el node tenim cabal sobrant per tant podem dir que hi ha només el que necessita
-                    if(ant.capacitat() >= demanda(ant.node2()))return demanda(ant.node2());
-                    else return ant.capacitat();
-                }
-                else return 0;
-            }
-            else if(node.aixetaOberta()) {
-
-                return suma;
-            }
-            else return 0;
-        }
-        else {
-            
-            List<Float> ll = demandesNode(node);
-            float sumDemandesNode = sumaDemandesNode(ll);
-
-            if (node instanceof Origen) {
-                Origen o = (Origen) node;
-                if(o.aixetaOberta()) {
-                    if (o.cabal() >= sumDemandesNode) {
-
-                        float prov = (demanda(ant.node2()) / sumDemandesNode) * o.cabal();
-
-                        if( demanda(o) > o.cabal() && o.cabal() <= ant.capacitat() && ll.size()==1)
-                            return o.cabal();
-                        else if ( demanda(o)  > o.cabal() && o.cabal() <= ant.capacitat() && ll.size()>1 ){
-
-                            if(ant.node2() instanceof Terminal) return distribuirPerSobre(entrada.get(ant.node2()),0,true,ant.node1());
-                            else return distribuirPerSobre(entrada.get(ant.node2()),0,false,ant.node1());
-
-                        }
-                        else if ( demanda(o)  > o.cabal() && prov > ant.capacitat())
-                            return ant.capacitat();
-
-                        else if ( demanda(o) <= o.cabal() && ll.size()==1){
-
-                            return demanda(o);
-                        }
-
-                        else if ( demanda(o) <= o.cabal() && ll.size()>1){
-
-                            if(ant.node2() instanceof Terminal) return distribuirPerSobre(entrada.get(ant.node2()),0,true,ant.node1());
-                            else return distribuirPerSobre(entrada.get(ant.node2()),demanda(ant.node2()),false,ant.node1());
-
-                        }
-                        else if ( demanda(o)  > o.cabal() && demanda(o) > ant.capacitat())
-                            return ant.capacitat();
-
-                    } else {
-
-                        float prov = (demanda(ant.node2()) / sumDemandesNode) * o.cabal();
-
-                        if (ant.capacitat() < prov) return ant.capacitat();
-                        else return prov;
-                    }
-                }
-                else return 0;
-            }
-        }
-        return 0;
-    }
-    
-   
 /** @brief Retorna el cabal teòric al node segons la configuració actual de la xarxa
 	@pre  node pertany a la xarxa 
 	@post Retorna el cabal teòric al node segons la configuració actual de la xarxa
@@ -583,7 +619,7 @@ public class Xarxa {
     //Excepcions: NoSuchElementException si node no pertany a la xarxa
     public float cabal(Node node){
 
-        //Recorregut cap avall, des de punts d'origen a terminals
+        //Recorregut cap avall, des de punts d'origen a terminals (MotorCabal)
         // Si cabal en un punt és suficient per servir demanda canonades per sota (subministrar cabal demanat)
         // Si cabal disponible és insuficient és distribuira proporcionalment
 
@@ -597,12 +633,7 @@ public class Xarxa {
                 else return 0;
             }
 
-            Node n=buscar(node, sortida);
-            if(sortida.get(node)==null){
-                n = buscar (node,entrada);
-                return cabalI(node, null);
-            }
-            return cabalI(node, null);
+            return calcularCabals().cabal(node);
 
         }
         catch (NoSuchElementException e){
@@ -611,6 +642,57 @@ public class Xarxa {
         return 0;
 
     }
+
+    /** @brief Calcula la demanda i el cabal de tots els nodes i canonades de la xarxa
+	@pre  ---
+	@post Retorna la demanda i el cabal teòrics de tots els nodes i canonades segons la configuració actual de la xarxa;
+          es calcula com a molt una vegada per versió
+    */
+    ResultatCabal calcularCabals(){
+        return memoria.obtenir(versio, "cabals", () -> MotorCabal.calcular(snapshot(), demandes()));
+    }
+
+    /** @brief Calcula la demanda de tots els nodes de la xarxa
+	@pre  ---
+	@post Retorna la demanda teòrica de cada node, indexada per snapshot(); es calcula com a molt una vegada per versió
+    */
+    private float[] demandes(){
+        return memoria.obtenir(versio, "demandes", () -> MotorDemanda.calcular(snapshot()));
+    }
+
+    /** @brief Retorna la versió actual de la xarxa
+	@pre  ---
+	@post Retorna un comptador que creix cada cop que s'afegeix un node o una canonada, s'obre o es tanca una aixeta, o
+          s'estableix un cabal o una demanda a través de la xarxa
+    */
+    public long versio(){
+        return versio;
+    }
+
+    /** @brief Retorna la memòria de resultats de la xarxa
+	@pre  ---
+	@post Retorna la memòria on es guarden els resultats calculats sobre la versió actual, compartida amb GestorXarxes
+    */
+    public MemoriaResultats memoria(){
+        return memoria;
+    }
+
+    /** @brief Retorna la versió de la topologia de la xarxa
+	@pre  ---
+	@post Retorna un comptador que creix cada cop que s'afegeix un node o una canonada
+    */
+    public long versioTopologia(){
+        return versioTopologia;
+    }
+
+    /** @brief Retorna la memòria de resultats que depenen només de la topologia
+	@pre  ---
+	@post Retorna la memòria on es guarden els resultats calculats sobre la topologia actual (vàlids encara que canviïn
+          aixetes, cabals, demandes o capacitats), compartida amb GestorXarxes
+    */
+    public MemoriaResultats memoriaTopologia(){
+        return memoriaTopologia;
+    }
     
 
 /** @brief Posa els atributs necessaris a la hora de fer el mostra en un Terminal
@@ -636,7 +718,7 @@ public class Xarxa {
 	@pre  En el graph si posaran les dades que necessaries que conte node 
 	@post S'ha modificat graph amb les dades corresponents al node
     */
-    private void afegirAtributs(Node node,Graph graph){
+    private void afegirAtributs(Node node,Graph graph,ResultatCabal resultat){
         org.graphstream.graph.Node nodeGraph = graph.getNode(node.id());
         if (node instanceof Terminal) {
             //La demanda punta i la demanda actual a cada punt terminal
@@ -645,8 +727,8 @@ public class Xarxa {
             nodeGraph.setAttribute("label", str);
         } else {
 
-            String demanda = Float.toString(demanda(node));
-            String cabal = Float.toString(cabal(node));
+            String demanda = Float.toString(resultat.demanda(node));
+            String cabal = Float.toString(resultat.cabal(node));
             String cord =node.id().concat(" --> ").concat(demanda).concat("/").concat(cabal);
             nodeGraph.setAttribute("label",cord);
         }
@@ -658,88 +740,13 @@ public class Xarxa {
         nodeGraph.addAttribute("xy",x,y);
     }
 
-    /** @brief Diu el cabal que va a la canonada c
-     @pre  node i c pertanyen a la xarxa, it1 està inicialitzat
-     @post Retorna el cabal de c donat per node
-     */
-
-    private float cabalCanonada(Node node, Canonada c, Iterator<Canonada> it1){
-        float cabalN2;
-        List<Float> ll2 = demandesNode(node);
-        float sumDemandesNode = sumaDemandesNode(ll2);
-        if(demanda(c.node2())==0) return (float) 0.0;
-        if(node instanceof Origen) {
-            Origen o = (Origen) node;
-
-            if(o.aixetaOberta()) {
-                if (o.cabal() >= sumDemandesNode) {
-
-                    float prov = (demanda(c.node2()) / sumDemandesNode) * o.cabal(); // 166.66665
-
-                    if( demanda(o) > o.cabal() && o.cabal() <= c.capacitat() && ll2.size()==1)
-                        cabalN2 = o.cabal();
-                    else if ( demanda(o)  > o.cabal() && o.cabal() <= c.capacitat() && ll2.size()>1 ){
-
-                        if(c.node2() instanceof Terminal) cabalN2 = distribuirPerSobre(entrada.get(c.node2()),0,true,c.node1());
-                        else cabalN2 = distribuirPerSobre(entrada.get(c.node2()),0,false,c.node1());
-
-                    }
-                    else if ( demanda(o)  > o.cabal() && prov > c.capacitat())
-                        cabalN2 = c.capacitat();
-
-                    else if ( demanda(o) <= o.cabal() && ll2.size()==1){
-
-                        cabalN2 = demanda(o);
-                    }
-
-                    else if ( demanda(o) <= o.cabal() && ll2.size()>1){
-
-                        if(c.node2() instanceof Terminal) cabalN2 = distribuirPerSobre(entrada.get(c.node2()),0,true,c.node1());
-                        else cabalN2 = distribuirPerSobre(entrada.get(c.node2()),demanda(c.node2()),false,c.node1());
-
-                    }
-                    else if ( demanda(o)  > o.cabal() && demanda(o) > c.capacitat())
-                        cabalN2 = c.capacitat();
-
-                    else cabalN2 = (float) 0.0;
-
-                } else {
-
-                    float prov = (demanda(c.node2()) / sumDemandesNode) * o.cabal();
-
-                    if (c.capacitat() < prov) cabalN2 = c.capacitat();
-                    else cabalN2 = prov;
-                }
-            }
-            else return 0;
-        }
-        else if(entrada.get(c.node2())!= null && entrada.get(c.node2()).size()>1) {
-            float sumCap = 0;
-            Terminal t = null;
-            float capacitatCan = 0;
-            while (it1.hasNext()) {
-                Canonada c1 = it1.next();
-                sumCap = sumCap + c.capacitat();
-
-                if (c1.equals(c)) {
-                    capacitatCan = c.capacitat();
-                }
-            }
-            cabalN2 = cabal(c.node1()) * ((demanda(node) / sumCap));
-        }
-        else{
-            cabalN2 = cabal(c.node2());
-        }
-        return cabalN2;
-    }
-
-    
     /** @brief Crea un graph amb la llibreria graphStream
 	@pre  graph inicialitzat 
 	@post Afegeix tots els nodes i arestes de la xarxa al graph amb el cabal, demanda coordenades,estat de les aixetes, sentit de l'aigua
     */
 
     private void dibuixI(Graph graph) {
+        ResultatCabal resultat = calcularCabals();
         Iterator<Node> s = sortida.keySet().iterator();
 
         while (s.hasNext()) {
@@ -749,7 +756,7 @@ public class Xarxa {
 
             if (existeix == null) {
                 graph.addNode(node.id());
-                afegirAtributs(node, graph);
+                afegirAtributs(node, graph, resultat);
             }
             Iterator<Canonada> itCan = ll.iterator();
 
@@ -760,16 +767,13 @@ public class Xarxa {
                 org.graphstream.graph.Node nodeGraph = graph.getNode(n2.id());
                 if(nodeGraph == null) {
                     graph.addNode(n2.id());
-                    afegirAtributs(n2, graph);
+                    afegirAtributs(n2, graph, resultat);
                 }
                 //La capacitat i el cabal actual a cada canonada
                 String cap = Float.toString(c.capacitat());
                 String cabal;
 
-                Set<Canonada> ll1 = sortida.get(node);
-                Iterator<Canonada> it1 = ll1.iterator();
-
-                Float cabalN2 = cabalCanonada(node,c,it1);
+                float cabalN2 = resultat.cabalDibuix(resultat.instantania().posicio(c));
 
                 cabal = Float.toString(cabalN2);
 
@@ -830,47 +834,203 @@ public class Xarxa {
         return 0;
     }
 
-    /** @brief Retorna tots els origens conectats a node
-	@pre  El node n pertany a la xarxa, res i visitats han d'estar inciialitzats  
-	@post Retorna tots els origens conectats a node, i els guarda a res, deixa de guardar resultats si n esta dins de visitats
+    /** @brief Retorna el cabal de tots els abonats de idClients
+	@pre  ---
+	@post Retorna, en l'ordre de idClients, el cabal actual al punt d'abastament de cada client que es troba a la xarxa;
+          els cabals de la xarxa es calculen com a molt una vegada
     */
-    private void origensI(Node n,Set<Node> res,Queue<Node> visitats){
-
-        Iterator<Canonada> itE = null;
-        Set<Canonada> e = entrada.get(n);
-        if(e!=null) itE = e.iterator();
-        visitats.add(n);
-        while(itE!=null && itE.hasNext()){
-            Canonada cE= itE.next();
-            Node node = cE.node1();
-
-            if(node instanceof Origen) res.add(node);
-            else if (!visitats.contains(node)) origensI(node,res,visitats);
-        }
-
-        Iterator<Canonada> itS = null;
-        Set<Canonada> sort = sortida.get(n);
-        if(sort!=null) itS = sort.iterator();
-
-        while(itS!=null && itS.hasNext()){
-            Canonada cS= itS.next();
-            Node node = cS.node2();
-            if(!(cS.node2() instanceof Origen) && !visitats.contains(node)) origensI(node,res,visitats);
+    //Excepcions: NoSuchElementException si algun client no es troba a la Xarxa (s'ignora i es continua amb la resta)
+    public Map<String,Float> cabalAbonats(Collection<String> idClients){
+        Map<String,Float> res = new LinkedHashMap<>();
+        ResultatCabal r = null;
+        for (String idClient : idClients) {
+            try{
+                Node n = clients.get(idClient);
+                if(n==null) throw new NoSuchElementException("El client no pertany a la xarxa");
+                if(r==null) r = calcularCabals();
+                res.put(idClient, r.cabal(n));
+            }catch (NoSuchElementException e){
+                System.out.println("\nError a les dades --> " + e.getMessage());
+            }
         }
+        return res;
     }
-   
+
      /** @brief Retorna tots els origens conectats a o
 	@pre  Origen pertany a la xarxa  
 	@post Retorna tots els origens conectats a o
     */
     public Set<Node> origensXarxa(Origen o){
         Set<Node> res = new HashSet<>();
-
-        Set<Canonada> s = sortida.get(o);
         res.add(o);
-        Queue<Node> visitats = new LinkedList<>();
-        origensI(o,res,visitats);
-
+        InstantaniaXarxa s = snapshot();
+        int i = s.index(o);
+        if (i >= 0) {
+            for (int origen : s.indexComponents().origens(i)) res.add(s.node(origen));
+        }
         return res;
     }
+
+    /** @brief Subscriu un observador als canvis de cabal dels abonats idClients
+	@pre  observador no és null
+	@post Retorna una subscripció que, després de cada modificació de la xarxa feta amb tancarAixeta, obrirAixeta,
+          establirDemanda, establirCabal o connectarAmbCanonada, notifica a observador els abonats el cabal dels quals ha canviat
+    */
+    //Excepcions: NoSuchElementException si algun client no es troba a la Xarxa (s'ignora i es continua amb la resta)
+    public Subscripcio subscriureAbonats(Collection<String> idClients, ObservadorCabal observador){
+        Subscripcio sub = new Subscripcio(observador);
+        ResultatCabal r = resultatSubscripcions();
+        for (String idClient : idClients) {
+            try{
+                Node n = clients.get(idClient);
+                if(n==null) throw new NoSuchElementException("El client no pertany a la xarxa");
+                sub.afegir(n, idClient, r.cabal(n));
+            }catch (NoSuchElementException e){
+                System.out.println("\nError a les dades --> " + e.getMessage());
+            }
+        }
+        registrar(sub);
+        return sub;
+    }
+
+    /** @brief Subscriu un observador als canvis de cabal dels nodes
+	@pre  observador no és null
+	@post Retorna una subscripció que notifica a observador, amb l'identificador de cada node com a clau, els nodes
+          el cabal dels quals ha canviat després de cada modificació de la xarxa
+    */
+    //Excepcions: NoSuchElementException si algun node no pertany a la xarxa (s'ignora i es continua amb la resta)
+    public Subscripcio subscriureNodes(Collection<Node> nodesSubscrits, ObservadorCabal observador){
+        Subscripcio sub = new Subscripcio(observador);
+        ResultatCabal r = resultatSubscripcions();
+        for (Node node : nodesSubscrits) {
+            try{
+                Node n = registrat(node);
+                if(n==null) throw new NoSuchElementException("El node no pertany a la xarxa");
+                sub.afegir(n, n.id(), r.cabal(n));
+            }catch (NoSuchElementException e){
+                System.out.println("\nError a les dades --> " + e.getMessage());
+            }
+        }
+        registrar(sub);
+        return sub;
+    }
+
+    /** @brief Cancel·la la subscripció sub
+	@pre  ---
+	@post sub ja no rep més notificacions
+    */
+    public void cancelarSubscripcio(Subscripcio sub){
+        if(!subscripcions.remove(sub)) return;
+        for (Node n : sub.nodes()) {
+            List<Subscripcio> ll = subscritsNode.get(n);
+            ll.remove(sub);
+            if(ll.isEmpty()) subscritsNode.remove(n);
+        }
+        if(subscripcions.isEmpty()) darrerResultat = null;
+    }
+
+    /** @brief Dona d'alta la subscripció sub
+	@pre  sub no està donada d'alta
+	@post sub rebrà els canvis dels seus nodes
+    */
+    private void registrar(Subscripcio sub){
+        subscripcions.add(sub);
+        for (Node n : sub.nodes()) {
+            subscritsNode.computeIfAbsent(n, k -> new ArrayList<>()).add(sub);
+        }
+    }
+
+    /** @brief Retorna els cabals actuals amb què es comparen els de les subscripcions
+	@pre  ---
+	@post Retorna el resultat de l'última notificació, o el calcula si no hi ha cap subscripció activa
+    */
+    private ResultatCabal resultatSubscripcions(){
+        if(darrerResultat==null) darrerResultat = calcularCabals();
+        return darrerResultat;
+    }
+
+    /** @brief Notifica als subscriptors els cabals que han canviat per una modificació dels nodes mutats
+	@pre  mutats pertanyen a la xarxa i acaben de ser modificats
+	@post Cada subscripció amb algun node afectat que ha canviat de cabal ha rebut els seus canvis
+    */
+    private void notificarCanvis(Node... mutats){
+        if(subscripcions.isEmpty()) return;
+
+        ResultatCabal anterior = darrerResultat;
+        ResultatCabal actual = calcularCabals();
+        darrerResultat = actual;
+        InstantaniaXarxa s = actual.instantania();
+
+        //Arrels: els nodes mutats, els origens de les canonades que hi entren (una canonada nova o una capacitat
+        //canviada reparteix d'una altra manera la demanda del node entre els pares, encara que la seva no canviï)
+        //i, pujant, els pares de tot node la demanda del qual ha canviat
+        boolean[] arrel = new boolean[s.nombreNodes()];
+        Deque<Integer> pila = new ArrayDeque<>();
+        for (Node m : mutats) {
+            int i = s.index(m);
+            if (i < 0) continue;
+            if (!arrel[i]) {
+                arrel[i] = true;
+                pila.push(i);
+            }
+            for (int j = s.iniciEntrades(i); j < s.fiEntrades(i); j++) {
+                int pare = s.origenEntrada(j);
+                if (!arrel[pare]) {
+                    arrel[pare] = true;
+                    pila.push(pare);
+                }
+            }
+        }
+        List<Integer> arrels = new ArrayList<>(pila);
+        while (!pila.isEmpty()) {
+            int c = pila.pop();
+            if (!demandaCanviada(anterior, actual, c)) continue;
+            for (int j = s.iniciEntrades(c); j < s.fiEntrades(c); j++) {
+                int pare = s.origenEntrada(j);
+                if (!arrel[pare]) {
+                    arrel[pare] = true;
+                    arrels.add(pare);
+                    pila.push(pare);
+                }
+            }
+        }
+
+        //Con aigües avall de les arrels
+        boolean[] afectat = new boolean[s.nombreNodes()];
+        Map<Subscripcio,Map<String,Float>> canvis = new LinkedHashMap<>();
+        for (int a : arrels) afectat[a] = true;
+        pila.addAll(arrels);
+        while (!pila.isEmpty()) {
+            int u = pila.pop();
+            Node node = s.node(u);
+            List<Subscripcio> subs = subscritsNode.get(node);
+            if (subs != null) {
+                for (Subscripcio sub : subs) {
+                    sub.actualitzar(node, actual.cabal(u), canvis.computeIfAbsent(sub, k -> new LinkedHashMap<>()));
+                }
+            }
+            for (int k = s.iniciSortides(u); k < s.fiSortides(u); k++) {
+                int w = s.desti(k);
+                if (!afectat[w]) {
+                    afectat[w] = true;
+                    pila.push(w);
+                }
+            }
+        }
+
+        for (Map.Entry<Subscripcio,Map<String,Float>> e : canvis.entrySet()) {
+            if (!e.getValue().isEmpty()) e.getKey().observador().cabalCanviat(e.getValue());
+        }
+    }
+
+    /** @brief Diu si la demanda del node i ha canviat entre anterior i actual
+	@pre  i és un índex de actual.instantania()
+	@post Retorna true si el node i no existia a anterior o la seva demanda és diferent
+    */
+    private boolean demandaCanviada(ResultatCabal anterior, ResultatCabal actual, int i){
+        if (anterior == null) return true;
+        int j = anterior.instantania().index(actual.instantania().node(i));
+        if (j < 0) return true;
+        return Float.compare(anterior.demanda(j), actual.demanda(i)) != 0;
+    }
 }